@@ -0,0 +1,137 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Banc d'essai des calculs, de l'evaluation des lots et de la repartition.
+ *
+ * Chaque cas est execute en boucle pendant des iterations de duree fixe:
+ * des iterations de rechauffement, ignorees, puis des iterations mesurees.
+ * Le temps moyen par appel est rapporte avec son ecart-type, comme le mode
+ * "AverageTime" de JMH. Les resultats des cas sont accumules dans un puits
+ * pour que le compilateur JIT ne puisse pas eliminer les calculs.
+ *
+ *   ant bench -Dbench.args="[options] [expression reguliere]"
+ *     -wi [n] : iterations de rechauffement (3 par defaut).
+ *     -i [n] : iterations mesurees (5 par defaut).
+ *     -t [ms] : duree d'une iteration (1000 par defaut).
+ *     -l : lister les cas sans les executer.
+ */
+public final class Bench {
+
+	private final Map<String, IntSupplier> cases = new LinkedHashMap<>();
+	private int warmupIterations = 3;
+	private int iterations = 5;
+	private long iterationMillis = 1000;
+
+	// Puits des resultats: empeche l'elimination des calculs par le JIT.
+	private volatile int sink;
+
+	public static void main(String[] args) {
+		Bench bench = new Bench();
+		OperationsBench.register(bench);
+		EvaluatorBench.register(bench);
+		DispatchBench.register(bench);
+
+		Pattern filter = Pattern.compile(".*");
+		boolean list = false;
+
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+				case "-wi":
+					bench.warmupIterations = Integer.valueOf(args[++i]);
+					break;
+				case "-i":
+					bench.iterations = Integer.valueOf(args[++i]);
+					break;
+				case "-t":
+					bench.iterationMillis = Long.valueOf(args[++i]);
+					break;
+				case "-l":
+					list = true;
+					break;
+				default:
+					filter = Pattern.compile(args[i]);
+			}
+		}
+
+		if (bench.iterations < 1 || bench.warmupIterations < 0 || bench.iterationMillis < 1) {
+			System.out.println("Erreur: Les iterations et leur duree doivent etre positives.");
+			return;
+		}
+
+		List<String> selected = new ArrayList<>();
+		for (String name : bench.cases.keySet()) {
+			if (filter.matcher(name).find()) {
+				selected.add(name);
+			}
+		}
+
+		if (list) {
+			selected.forEach(System.out::println);
+			return;
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%-48s %5s %14s %12s  %s", "Cas", "Cnt", "Score", "Erreur", "Unites"));
+		for (String name : selected) {
+			bench.measure(name, bench.cases.get(name));
+		}
+	}
+
+	/**
+	 * Ajoute un cas. Le resultat de l'operation est consomme par le banc d'essai.
+	 */
+	public void add(String name, IntSupplier operation) {
+		cases.put(name, operation);
+	}
+
+	private void measure(String name, IntSupplier operation) {
+		for (int i = 0; i < warmupIterations; i++) {
+			iterate(operation);
+		}
+
+		double[] scores = new double[iterations];
+		for (int i = 0; i < iterations; i++) {
+			scores[i] = iterate(operation);
+		}
+
+		double mean = 0;
+		for (double score : scores) {
+			mean += score / iterations;
+		}
+
+		double variance = 0;
+		for (double score : scores) {
+			variance += (score - mean) * (score - mean) / Math.max(1, iterations - 1);
+		}
+
+		System.out.println(String.format(Locale.ROOT, "%-48s %5d %14.3f %12.3f  us/op", name, iterations, mean, Math.sqrt(variance)));
+	}
+
+	/**
+	 * Execute l'operation pendant une iteration et retourne le temps moyen par appel (microsecondes).
+	 */
+	private double iterate(IntSupplier operation) {
+		long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+		long start = System.nanoTime();
+		long calls = 0;
+		int accumulated = 0;
+		long now;
+
+		do {
+			accumulated += operation.getAsInt();
+			calls++;
+			now = System.nanoTime();
+		} while (now < deadline);
+
+		sink += accumulated;
+		return (now - start) / 1e3 / calls;
+	}
+
+}
@@ -0,0 +1,174 @@
+package benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+import repartiteur.Chunk;
+import repartiteur.Deduplicator;
+import repartiteur.OperationReader;
+import repartiteur.PipelinedScheduler;
+import repartiteur.WorkQueue;
+import serveur.Evaluator;
+import serveur.FastEngine;
+import shared.ServerInterface;
+import shared.ServerOverloadedException;
+
+/**
+ * Cote repartiteur: lecture et decoupage du fichier d'operations, puis
+ * repartition en pipeline vers des serveurs factices dans le meme processus.
+ * Les serveurs factices calculent avec le moteur rapide et peuvent simuler
+ * une latence reseau fixe par lot.
+ */
+final class DispatchBench {
+
+	private static final File OPERATIONS_FILE = new File("inputs/operations-test");
+	private static final int NB_OPERATIONS = 100000;
+	private static final int NB_SERVERS = 4;
+	private static final int BATCH_SIZE = 1000;
+
+	private DispatchBench() {
+	}
+
+	static void register(Bench bench) {
+		bench.add("chunking/read/" + OPERATIONS_FILE.getName(), () -> {
+			int[] nbOperations = new int[1];
+			read(chunk -> nbOperations[0] += chunk.size());
+			return nbOperations[0];
+		});
+
+		bench.add("chunking/deduplicate/" + OPERATIONS_FILE.getName(), () -> {
+			Deduplicator deduplicator = new Deduplicator();
+			read(deduplicator);
+			return deduplicator.getUniqueCount();
+		});
+
+		EvaluatorBench.Batch workload = new EvaluatorBench.Batch(NB_OPERATIONS);
+		ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		for (long latencyMicros : new long[] { 0, 500 }) {
+			for (int depth : new int[] { 1, 2, 4 }) {
+				List<ServerInterface> servers = new ArrayList<>();
+				for (int i = 0; i < NB_SERVERS; i++) {
+					servers.add(new FakeServer(latencyMicros));
+				}
+
+				bench.add("dispatch/pipelined/latency-" + latencyMicros + "us/depth-" + depth,
+						() -> dispatch(workload, servers, depth, executor));
+			}
+		}
+	}
+
+	private static void read(java.util.function.Consumer<Chunk> consumer) {
+		try {
+			OperationReader.read(OPERATIONS_FILE, OperationReader.DEFAULT_CHUNK_SIZE, consumer);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static int dispatch(EvaluatorBench.Batch workload, List<ServerInterface> servers, int depth, ExecutorService executor) {
+		WorkQueue workQueue = new WorkQueue();
+		for (int from = 0; from < NB_OPERATIONS; from += OperationReader.DEFAULT_CHUNK_SIZE) {
+			int to = Math.min(NB_OPERATIONS, from + OperationReader.DEFAULT_CHUNK_SIZE);
+			workQueue.add(new Chunk(workload.opcodes, workload.parameters, from, to));
+		}
+		workQueue.close();
+
+		PipelinedScheduler scheduler = new PipelinedScheduler(workQueue, servers, depth, new PipelinedScheduler.BatchExecutor() {
+
+			@Override
+			public int getBatchSize(ServerInterface server) {
+				return BATCH_SIZE;
+			}
+
+			@Override
+			public CompletableFuture<Integer> execute(ServerInterface server, Chunk batch) {
+				return CompletableFuture.supplyAsync(() -> {
+					try {
+						int result = server.calculate(batch.getOpcodes(), batch.getParameters());
+						workQueue.complete(batch);
+						return result;
+					} catch (ServerOverloadedException | RemoteException e) {
+						workQueue.requeue(batch);
+						return 0;
+					}
+				}, executor);
+			}
+
+		});
+
+		try {
+			scheduler.run();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return scheduler.getResult();
+	}
+
+	/**
+	 * Serveur factice: evalue les lots localement apres une latence fixe.
+	 */
+	private static class FakeServer implements ServerInterface {
+
+		private final Evaluator evaluator = new Evaluator(new FastEngine());
+		private final long latencyNanos;
+
+		FakeServer(long latencyMicros) {
+			this.latencyNanos = latencyMicros * 1000;
+		}
+
+		@Override
+		public boolean authenticate(String username, String password) {
+			return true;
+		}
+
+		@Override
+		public int calculate(List<String> operations) {
+			simulateLatency();
+			return evaluator.evaluate(operations);
+		}
+
+		@Override
+		public int calculate(byte[] opcodes, int[] parameters) {
+			simulateLatency();
+			return evaluator.evaluate(opcodes, parameters);
+		}
+
+		@Override
+		public int calculate(byte[] opcodes, int[] parameters, int[] counts) {
+			simulateLatency();
+			return evaluator.evaluate(opcodes, parameters, counts);
+		}
+
+		@Override
+		public int[] calculateBlocks(byte[] opcodes, int[] parameters, int[] counts, int blockSize) {
+			simulateLatency();
+			int[] results = new int[(opcodes.length + blockSize - 1) / blockSize];
+			for (int block = 0; block < results.length; block++) {
+				int from = block * blockSize;
+				results[block] = evaluator.evaluate(opcodes, parameters, counts, from, Math.min(opcodes.length, from + blockSize));
+			}
+			return results;
+		}
+
+		private void simulateLatency() {
+			if (latencyNanos > 0) {
+				LockSupport.parkNanos(latencyNanos);
+			}
+		}
+
+	}
+
+}
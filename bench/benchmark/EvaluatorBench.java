@@ -0,0 +1,89 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import serveur.AdmissionController;
+import serveur.Evaluator;
+import serveur.FastEngine;
+import serveur.ReferenceEngine;
+import shared.Opcodes;
+import shared.ServerOverloadedException;
+
+/**
+ * Evaluation d'un lot par le serveur: lecture des operations textuelles ou
+ * encodees, puis calcul et reduction "% 4000", en serie ou en parallele.
+ * Le cas "server" ajoute le controle d'admission, comme Server.calculate.
+ */
+final class EvaluatorBench {
+
+	private EvaluatorBench() {
+	}
+
+	static void register(Bench bench) {
+		for (int size : new int[] { 100, 10000 }) {
+			Batch batch = new Batch(size);
+
+			// Le moteur de reference prend plusieurs secondes par lot de 10000 operations.
+			if (size <= 100) {
+				add(bench, "evaluate/text/reference/" + size, new Evaluator(new ReferenceEngine()), batch, true);
+				add(bench, "evaluate/encoded/reference/" + size, new Evaluator(new ReferenceEngine()), batch, false);
+			}
+			add(bench, "evaluate/text/fast/" + size, new Evaluator(new FastEngine()), batch, true);
+			add(bench, "evaluate/encoded/fast/" + size, new Evaluator(new FastEngine()), batch, false);
+			add(bench, "evaluate/encoded/fast-parallel/" + size, new Evaluator(new FastEngine(), 1024), batch, false);
+
+			Evaluator evaluator = new Evaluator(new FastEngine());
+			AdmissionController admission = new AdmissionController(size);
+			bench.add("server/calculate/fast/" + size, () -> {
+				try {
+					admission.admit(size);
+				} catch (ServerOverloadedException e) {
+					throw new IllegalStateException(e);
+				}
+
+				long start = System.nanoTime();
+				try {
+					return evaluator.evaluate(batch.opcodes, batch.parameters);
+				} finally {
+					admission.release(size, System.nanoTime() - start);
+				}
+			});
+		}
+	}
+
+	private static void add(Bench bench, String name, Evaluator evaluator, Batch batch, boolean text) {
+		if (text) {
+			bench.add(name, () -> evaluator.evaluate(batch.operations));
+		} else {
+			bench.add(name, () -> evaluator.evaluate(batch.opcodes, batch.parameters));
+		}
+	}
+
+	/**
+	 * Lot aleatoire (graine fixe) a l'image des fichiers d'operations, sous ses deux formes.
+	 */
+	static class Batch {
+
+		final byte[] opcodes;
+		final int[] parameters;
+		final List<String> operations;
+
+		Batch(int size) {
+			Random random = new Random(size);
+			opcodes = new byte[size];
+			parameters = new int[size];
+			operations = new ArrayList<>(size);
+
+			for (int i = 0; i < size; i++) {
+				boolean pell = random.nextBoolean();
+				opcodes[i] = pell ? Opcodes.PELL : Opcodes.PRIME;
+				parameters[i] = pell ? random.nextInt(26) : 5000 + random.nextInt(5001);
+				operations.add(Opcodes.toName(opcodes[i]) + " " + parameters[i]);
+			}
+		}
+
+	}
+
+}
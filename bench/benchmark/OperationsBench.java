@@ -0,0 +1,57 @@
+package benchmark;
+
+import java.util.Random;
+import java.util.function.IntUnaryOperator;
+
+import serveur.FastEngine;
+import serveur.OperationEngine;
+import serveur.Operations;
+
+/**
+ * Calculs unitaires "pell" et "prime" par plage de parametres, pour le moteur
+ * de reference (Operations) et le moteur rapide. Les parametres sont tires
+ * d'un generateur a graine fixe pour que les mesures soient reproductibles.
+ */
+final class OperationsBench {
+
+	private static final int NB_PARAMETERS = 1024;
+
+	private OperationsBench() {
+	}
+
+	static void register(Bench bench) {
+		OperationEngine fast = new FastEngine();
+
+		// Les fichiers d'operations utilisent pell 0 a 25 et prime 5000 a 10000.
+		add(bench, "operations/pell/reference/0-12", Operations::pell, 0, 12);
+		add(bench, "operations/pell/reference/13-25", Operations::pell, 13, 25);
+		add(bench, "operations/pell/fast/0-25", fast::pell, 0, 25);
+
+		add(bench, "operations/prime/reference/2-1000", Operations::prime, 2, 1000);
+		add(bench, "operations/prime/reference/5000-10000", Operations::prime, 5000, 10000);
+		add(bench, "operations/prime/fast/5000-10000", fast::prime, 5000, 10000);
+
+		// Hors de la table du moteur rapide: factorisation par divisions successives.
+		add(bench, "operations/prime/fast/100000-1000000", fast::prime, 100000, 1000000);
+	}
+
+	private static void add(Bench bench, String name, IntUnaryOperator operation, int min, int max) {
+		int[] parameters = parameters(min, max);
+		int[] index = new int[1];
+
+		bench.add(name, () -> {
+			int i = index[0]++ & (NB_PARAMETERS - 1);
+			return operation.applyAsInt(parameters[i]);
+		});
+	}
+
+	static int[] parameters(int min, int max) {
+		Random random = new Random(42);
+		int[] parameters = new int[NB_PARAMETERS];
+		for (int i = 0; i < NB_PARAMETERS; i++) {
+			parameters[i] = min + random.nextInt(max - min + 1);
+		}
+		return parameters;
+	}
+
+}
@@ -0,0 +1,169 @@
+package simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import repartiteur.OperationReader;
+import repartiteur.Repartiteur;
+import serveur.Evaluator;
+import serveur.FastEngine;
+import serveur.Server;
+import service.Service;
+
+/**
+ * Grappe complete dans un seul processus, sur l'interface de bouclage: le
+ * service des noms (port 5000), des serveurs (ports 5001 et suivants) et un
+ * repartiteur. Chaque groupe de serveurs a sa propre capacite, son taux de
+ * malice et ses options (moteur, transport, ...). Deux options propres a la
+ * simulation injectent des fautes (voir FaultyServer): "-l [ms]" ajoute une
+ * latence avant chaque lot et "-c [lots]" simule une panne au lot [lots].
+ * Le resultat attendu est calcule localement pour verifier le resultat du
+ * repartiteur lors des experiences de tolerance aux pannes.
+ *
+ *   ant simulate -Dsimulate.args="[fichier d'operations | - | -daemon] [options]"
+ *     -serveurs [n] "[capacite] [taux de malice] [options du serveur]" : ajouter n serveurs (repetable).
+ *     -r "[options du repartiteur]" : options passees au repartiteur (ex. "-s -d 4").
+ *
+ * Sans l'option -serveurs, la grappe compte trois serveurs "100 0 -f".
+ * Avec "-daemon", le repartiteur attend les taches soumises par des clients
+ * ("./client.sh [fichier] 127.0.0.1 -j") au lieu de lire un fichier.
+ */
+public final class Cluster {
+
+	private static final String INPUT_DIRECTORY = "inputs/";
+	private static final String LOOPBACK = "127.0.0.1";
+	private static final int FIRST_SERVER_PORT = 5001;
+
+	private Cluster() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Erreur: Aucun fichier d'operations.");
+			return;
+		}
+
+		String operationsFileName = args[0];
+		File operationsFile = new File(INPUT_DIRECTORY + operationsFileName);
+		boolean readFromStdin = operationsFileName.equals("-");
+		boolean daemon = operationsFileName.equals("-daemon");
+		if (!readFromStdin && !daemon && !operationsFile.exists()) {
+			System.out.println("Erreur: Le fichier d'operation n'existe pas.");
+			return;
+		}
+
+		List<String> serverSpecs = new ArrayList<>();
+		List<String> repartiteurArgs = new ArrayList<>(Arrays.asList(operationsFileName, LOOPBACK));
+
+		for (int i = 1; i < args.length; i++) {
+			switch (args[i]) {
+				case "-serveurs":
+					if (i + 2 >= args.length) {
+						System.out.println("Erreur: Les serveurs doivent etre de la forme [n] \"[capacite] [taux] [options]\".");
+						return;
+					}
+					int nbServers = Integer.valueOf(args[++i]);
+					String spec = args[++i];
+					for (int j = 0; j < nbServers; j++) {
+						serverSpecs.add(spec);
+					}
+					break;
+				case "-r":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucune option pour le repartiteur.");
+						return;
+					}
+					repartiteurArgs.addAll(split(args[++i]));
+					break;
+				default:
+					System.out.println("Erreur: Argument pas reconnu: " + args[i]);
+					return;
+			}
+		}
+
+		if (serverSpecs.isEmpty()) {
+			serverSpecs.addAll(Arrays.asList("100 0 -f", "100 0 -f", "100 0 -f"));
+		}
+
+		Service.main(new String[0]);
+
+		int port = FIRST_SERVER_PORT;
+		for (String spec : serverSpecs) {
+			List<String> serverArgs = split(spec);
+			if (serverArgs.size() < 2) {
+				System.out.println("Erreur: Serveur mal defini: " + spec);
+				System.exit(1);
+			}
+
+			Server server = new Server(Integer.valueOf(serverArgs.get(0)), Float.valueOf(serverArgs.get(1)), LOOPBACK);
+			// Les options de fautes sont retirees avant de passer les autres au serveur.
+			long latencyMillis = takeOption(serverArgs, "-l");
+			long crashAfterBatches = takeOption(serverArgs, "-c");
+			if (latencyMillis < 0 || crashAfterBatches < 0) {
+				System.out.println("Erreur: La latence et le point de panne doivent etre positifs: " + spec);
+				System.exit(1);
+			}
+			serverArgs.addAll(Arrays.asList("-port", String.valueOf(port++)));
+			if (!server.readOptions(serverArgs.toArray(new String[0]), 2)) {
+				System.exit(1);
+			}
+			if (latencyMillis > 0 || crashAfterBatches > 0) {
+				server.setEndpoint(new FaultyServer(server, latencyMillis, crashAfterBatches));
+			}
+			server.run();
+		}
+
+		// Une entree continue n'a pas de resultat attendu connu d'avance; le demon attend les taches des clients.
+		if (!readFromStdin && !daemon && !repartiteurArgs.contains("-f")) {
+			System.out.println("Résultat attendu : " + expectedResult(operationsFile));
+		}
+		Repartiteur.main(repartiteurArgs.toArray(new String[0]));
+
+		// Les serveurs et le service ne s'arretent pas d'eux-memes.
+		System.exit(0);
+	}
+
+	/**
+	 * Resultat exact du fichier, calcule localement avec le moteur rapide.
+	 */
+	private static int expectedResult(File operationsFile) throws IOException {
+		// Les tranches d'un fichier binaire sont decodees en parallele.
+		Evaluator evaluator = new Evaluator(new FastEngine());
+		AtomicInteger result = new AtomicInteger();
+		OperationReader.read(operationsFile, OperationReader.DEFAULT_CHUNK_SIZE, chunk -> result.accumulateAndGet(
+				evaluator.evaluate(chunk.getOpcodes(), chunk.getParameters()), (total, value) -> (total + value) % 4000));
+		return result.get();
+	}
+
+	/**
+	 * Retire une option numerique des options d'un serveur et retourne sa valeur (0 si absente, -1 si invalide).
+	 */
+	private static long takeOption(List<String> options, String name) {
+		int i = options.indexOf(name);
+		if (i < 0) {
+			return 0;
+		}
+		if (i + 1 >= options.size() || !options.get(i + 1).matches("\\d+")) {
+			return -1;
+		}
+
+		long value = Long.valueOf(options.get(i + 1));
+		options.subList(i, i + 2).clear();
+		return value;
+	}
+
+	private static List<String> split(String options) {
+		List<String> values = new ArrayList<>();
+		for (String value : options.trim().split("\\s+")) {
+			if (!value.isEmpty()) {
+				values.add(value);
+			}
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,89 @@
+package simulation;
+
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import serveur.Server;
+import shared.ServerInterface;
+import shared.ServerOverloadedException;
+
+/**
+ * Enveloppe d'un serveur de la grappe qui y injecte des fautes: une latence
+ * avant chaque lot (serveur lent ou eloigne) et une panne a un lot donne.
+ * A la panne, le serveur est arrete (voir Server.halt): il cesse de repondre
+ * aux repartiteurs et d'envoyer des battements de coeur.
+ */
+public class FaultyServer implements ServerInterface {
+
+	private final Server server;
+	private final long latencyMillis;
+	private final long crashAfterBatches;
+
+	private final AtomicLong nbBatches = new AtomicLong();
+	private volatile boolean crashed = false;
+
+	/**
+	 * @param latencyMillis latence avant chaque lot (0: aucune).
+	 * @param crashAfterBatches numero du lot auquel le serveur tombe en panne (0: jamais).
+	 */
+	public FaultyServer(Server server, long latencyMillis, long crashAfterBatches) {
+		this.server = server;
+		this.latencyMillis = latencyMillis;
+		this.crashAfterBatches = crashAfterBatches;
+	}
+
+	@Override
+	public boolean authenticate(String username, String password) throws RemoteException {
+		return server.authenticate(username, password);
+	}
+
+	@Override
+	public int calculate(List<String> operations) throws ServerOverloadedException, RemoteException {
+		inject();
+		return server.calculate(operations);
+	}
+
+	@Override
+	public int calculate(byte[] opcodes, int[] parameters) throws ServerOverloadedException, RemoteException {
+		inject();
+		return server.calculate(opcodes, parameters);
+	}
+
+	@Override
+	public int calculate(byte[] opcodes, int[] parameters, int[] counts) throws ServerOverloadedException, RemoteException {
+		inject();
+		return server.calculate(opcodes, parameters, counts);
+	}
+
+	@Override
+	public int[] calculateBlocks(byte[] opcodes, int[] parameters, int[] counts, int blockSize)
+			throws ServerOverloadedException, RemoteException {
+		inject();
+		return server.calculateBlocks(opcodes, parameters, counts, blockSize);
+	}
+
+	/**
+	 * Simule une panne ou une latence au besoin, avant que le serveur admette le lot.
+	 */
+	private void inject() throws RemoteException {
+		if (crashed || (crashAfterBatches > 0 && nbBatches.incrementAndGet() >= crashAfterBatches)) {
+			synchronized (this) {
+				if (!crashed) {
+					crashed = true;
+					server.halt();
+				}
+			}
+			throw new RemoteException("Le serveur est en panne.");
+		}
+
+		if (latencyMillis > 0) {
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,214 @@
+package simulation;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Random;
+
+import shared.Opcodes;
+
+/**
+ * Generateur de fichiers d'operations synthetiques ("pell 24", "prime 5571", ...).
+ *
+ *   ant generate -Dgenerate.args="[fichier] [options]" (le fichier est ecrit dans inputs/)
+ *     -n [operations] : nombre d'operations (100000 par defaut).
+ *     -mix [fraction] : fraction d'operations "pell" (0.5 par defaut).
+ *     -pell [min]-[max] : plage des parametres de "pell" (0-25 par defaut).
+ *     -prime [min]-[max] : plage des parametres de "prime" (5000-10000 par defaut).
+ *     -dist uniform|zipf[:s] : distribution des parametres dans leur plage. Avec zipf, les
+ *                              petites valeurs de la plage sont les plus frequentes (s = 1 par defaut).
+ *     -dup [fraction] : fraction d'operations qui repetent une operation recente.
+ *     -seed [graine] : graine du generateur (42 par defaut).
+ */
+public final class WorkloadGenerator {
+
+	private static final String INPUT_DIRECTORY = "inputs/";
+
+	// Les operations repetees sont tirees parmi les dernieres operations generees.
+	private static final int HISTORY_SIZE = 1 << 16;
+
+	private long nbOperations = 100000;
+	private double pellFraction = 0.5;
+	private int pellMin = 0;
+	private int pellMax = 25;
+	private int primeMin = 5000;
+	private int primeMax = 10000;
+	private double zipfExponent = 0;
+	private double duplicateFraction = 0;
+	private long seed = 42;
+
+	private WorkloadGenerator() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.out.println("Erreur: Aucun fichier d'operations.");
+			return;
+		}
+
+		WorkloadGenerator generator = new WorkloadGenerator();
+		if (!generator.readOptions(args, 1)) {
+			return;
+		}
+
+		File file = new File(INPUT_DIRECTORY + args[0]);
+		generator.write(file);
+		System.out.println(generator.nbOperations + " operations ecrites dans " + file.getPath());
+	}
+
+	private boolean readOptions(String[] args, int start) {
+		try {
+			for (int i = start; i < args.length; i++) {
+				switch (args[i]) {
+					case "-n":
+						nbOperations = Long.valueOf(args[++i]);
+						break;
+					case "-mix":
+						pellFraction = Double.valueOf(args[++i]);
+						break;
+					case "-pell":
+						int[] pellRange = range(args[++i]);
+						pellMin = pellRange[0];
+						pellMax = pellRange[1];
+						break;
+					case "-prime":
+						int[] primeRange = range(args[++i]);
+						primeMin = primeRange[0];
+						primeMax = primeRange[1];
+						break;
+					case "-dist":
+						String distribution = args[++i];
+						if (distribution.equals("uniform")) {
+							zipfExponent = 0;
+						} else if (distribution.startsWith("zipf")) {
+							zipfExponent = distribution.startsWith("zipf:") ? Double.valueOf(distribution.substring(5)) : 1;
+						} else {
+							System.out.println("Erreur: La distribution doit etre uniform ou zipf[:s].");
+							return false;
+						}
+						break;
+					case "-dup":
+						duplicateFraction = Double.valueOf(args[++i]);
+						break;
+					case "-seed":
+						seed = Long.valueOf(args[++i]);
+						break;
+					default:
+						System.out.println("Erreur: Argument pas reconnu: " + args[i]);
+						return false;
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+			System.out.println("Erreur: Option mal formee: " + e.getMessage());
+			return false;
+		}
+
+		if (nbOperations < 0 || pellFraction < 0 || pellFraction > 1 || duplicateFraction < 0 || duplicateFraction > 1) {
+			System.out.println("Erreur: Le nombre d'operations doit etre positif et les fractions entre 0 et 1.");
+			return false;
+		}
+		if (pellMin < 0 || pellMin > pellMax || primeMin < 0 || primeMin > primeMax || zipfExponent < 0) {
+			System.out.println("Erreur: Plage de parametres invalide.");
+			return false;
+		}
+		return true;
+	}
+
+	private void write(File file) throws IOException {
+		Random random = new Random(seed);
+		Sampler pellSampler = new Sampler(pellMin, pellMax, zipfExponent);
+		Sampler primeSampler = new Sampler(primeMin, primeMax, zipfExponent);
+
+		byte[] historyOpcodes = new byte[HISTORY_SIZE];
+		int[] historyParameters = new int[HISTORY_SIZE];
+
+		try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+			for (long i = 0; i < nbOperations; i++) {
+				byte opcode;
+				int parameter;
+
+				if (i > 0 && random.nextDouble() < duplicateFraction) {
+					int index = (int) ((i - 1 - random.nextInt((int) Math.min(i, HISTORY_SIZE))) % HISTORY_SIZE);
+					opcode = historyOpcodes[index];
+					parameter = historyParameters[index];
+				} else if (random.nextDouble() < pellFraction) {
+					opcode = Opcodes.PELL;
+					parameter = pellSampler.next(random);
+				} else {
+					opcode = Opcodes.PRIME;
+					parameter = primeSampler.next(random);
+				}
+
+				historyOpcodes[(int) (i % HISTORY_SIZE)] = opcode;
+				historyParameters[(int) (i % HISTORY_SIZE)] = parameter;
+
+				writer.write(Opcodes.toName(opcode));
+				writer.write(' ');
+				writer.write(Integer.toString(parameter));
+				writer.newLine();
+			}
+		}
+	}
+
+	private static int[] range(String value) {
+		String[] bounds = value.split("-");
+		if (bounds.length != 2) {
+			throw new IllegalArgumentException(value);
+		}
+		return new int[] { Integer.valueOf(bounds[0]), Integer.valueOf(bounds[1]) };
+	}
+
+	/**
+	 * Tirage d'un parametre dans [min, max], uniforme ou selon une loi de Zipf sur le rang (min = rang 1).
+	 */
+	private static class Sampler {
+
+		private final int min;
+		private final int size;
+		private final double[] cumulative;
+
+		Sampler(int min, int max, double exponent) {
+			this.min = min;
+			this.size = max - min + 1;
+
+			if (exponent == 0) {
+				cumulative = null;
+				return;
+			}
+
+			cumulative = new double[size];
+			double total = 0;
+			for (int rank = 1; rank <= cumulative.length; rank++) {
+				total += 1 / Math.pow(rank, exponent);
+				cumulative[rank - 1] = total;
+			}
+			for (int i = 0; i < cumulative.length; i++) {
+				cumulative[i] /= total;
+			}
+		}
+
+		int next(Random random) {
+			if (cumulative == null) {
+				return min + random.nextInt(size);
+			}
+			return min + search(random.nextDouble());
+		}
+
+		private int search(double value) {
+			int low = 0;
+			int high = cumulative.length - 1;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (cumulative[middle] < value) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+package repartiteur;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File de lots vue par l'ordonnanceur et les executeurs.
+ *
+ * Les lots sont reclames (claim), puis confirmes (complete) ou remis dans la
+ * file apres un echec (requeue). Le resultat combine de chaque lot est ensuite
+ * rapporte a la file (onResult). Un lot confirme peut encore etre remis dans la
+ * file (reopen) si son resultat se revele faux.
+ */
+public interface BatchQueue {
+
+	/**
+	 * Reclame un lot d'au plus maxOperations operations. Retourne null si aucune operation n'est disponible.
+	 */
+	Chunk claim(int maxOperations);
+
+	/**
+	 * Attend au plus timeout un changement de la file (ajout, remise ou fin du travail).
+	 */
+	void awaitChange(long timeout, TimeUnit unit) throws InterruptedException;
+
+	/**
+	 * Confirme le calcul d'un lot.
+	 */
+	void complete(Chunk batch);
+
+	/**
+	 * Remet dans la file un lot dont le calcul a echoue.
+	 */
+	void requeue(Chunk batch);
+
+	/**
+	 * Remet dans la file un lot deja confirme dont le resultat (result) s'est revele douteux:
+	 * ce resultat est retire de celui de la tache et le lot sera calcule a nouveau.
+	 * Retourne faux si la tache du lot est deja terminee.
+	 */
+	boolean reopen(Chunk batch, int result);
+
+	/**
+	 * Recoit le resultat d'un lot reclame une fois combine par l'ordonnanceur (0 si le lot
+	 * a ete remis dans la file).
+	 */
+	void onResult(Chunk batch, int result);
+
+	/**
+	 * Indique qu'aucun nouveau travail ne sera ajoute.
+	 */
+	void close();
+
+	/**
+	 * Vrai si la file est fermee et que toutes les operations ont ete confirmees.
+	 */
+	boolean isDone();
+
+	/**
+	 * Operations ajoutees mais pas encore confirmees (en file ou en cours de calcul).
+	 */
+	long getPendingOperations();
+
+	long getCompletedOperations();
+
+	/**
+	 * Nombre de lots remis dans la file apres un echec.
+	 */
+	long getRequeues();
+
+}
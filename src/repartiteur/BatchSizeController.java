@@ -0,0 +1,159 @@
+package repartiteur;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import shared.ServerInterface;
+import shared.ServerOverloadedException;
+
+/**
+ * Controleur de la taille des lots envoyes a chaque serveur.
+ * 
+ * En mode fixe, la taille d'un lot est la capacite annoncee du serveur. En
+ * mode adaptatif, la taille suit une politique AIMD: elle augmente de facon
+ * additive tant que le debit observe (operations par seconde) ne se degrade
+ * pas, revient vers la meilleure taille connue si le debit chute, et est
+ * reduite de moitie a chaque refus pour surcharge.
+ * 
+ * Dans les deux modes, les indications jointes a un refus sont respectees: la
+ * taille suggeree par le serveur (lot plus grand que ce qu'il peut admettre)
+ * devient une borne de la taille des lots, et le serveur ne recoit plus de lot
+ * avant le delai demande.
+ */
+public class BatchSizeController {
+
+	private static final double INCREASE_FRACTION = 0.1;
+	private static final double DECREASE_FACTOR = 0.5;
+	private static final double DEGRADATION_TOLERANCE = 0.9;
+	private static final double THROUGHPUT_SMOOTHING = 0.3;
+	private static final double BEST_THROUGHPUT_DECAY = 0.99;
+
+	private final boolean adaptive;
+	private final Map<ServerInterface, State> states = new ConcurrentHashMap<>();
+
+	public BatchSizeController(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+
+	public void register(ServerInterface server, int capacity) {
+		states.put(server, new State(Math.max(1, capacity)));
+	}
+
+	public void unregister(ServerInterface server) {
+		states.remove(server);
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	/**
+	 * Taille du prochain lot pour ce serveur, ou 0 si le serveur a demande d'attendre.
+	 */
+	public int getBatchSize(ServerInterface server) {
+		State state = states.get(server);
+		if (state == null) {
+			return 1;
+		}
+		if (state.isPaused()) {
+			return 0;
+		}
+		return Math.min(adaptive ? state.getSize() : state.capacity, state.maxSize);
+	}
+
+	/**
+	 * Un lot de batchSize operations a ete calcule en latencyNanos.
+	 */
+	public void onSuccess(ServerInterface server, int batchSize, long latencyNanos) {
+		State state = states.get(server);
+		if (adaptive && state != null) {
+			state.onSuccess(batchSize, latencyNanos);
+		}
+	}
+
+	/**
+	 * Un lot de batchSize operations a ete refuse pour surcharge.
+	 */
+	public void onOverload(ServerInterface server, int batchSize, ServerOverloadedException e) {
+		State state = states.get(server);
+		if (state == null) {
+			return;
+		}
+
+		if (e.getRetryAfterMillis() > 0) {
+			state.pause(e.getRetryAfterMillis());
+		}
+		if (e.getSuggestedBatchSize() > 0) {
+			// Un lot plus grand serait refuse a nouveau: borner la taille, meme en mode fixe.
+			state.maxSize = Math.min(state.maxSize, e.getSuggestedBatchSize());
+		}
+
+		if (adaptive) {
+			state.onOverload(batchSize, e.getSuggestedBatchSize());
+		}
+	}
+
+	private static class State {
+
+		private final int capacity;
+		private double size;
+		private double throughput = 0;
+		private double bestThroughput = 0;
+		private double bestSize;
+		private volatile long pausedUntil = 0;
+		// Taille maximale admise par le serveur, selon ses refus.
+		private volatile int maxSize = Integer.MAX_VALUE;
+
+		State(int capacity) {
+			this.capacity = capacity;
+			this.size = capacity;
+			this.bestSize = capacity;
+		}
+
+		synchronized int getSize() {
+			return (int) Math.max(1, Math.round(size));
+		}
+
+		synchronized void onSuccess(int batchSize, long latencyNanos) {
+			double observed = batchSize * 1e9 / Math.max(1, latencyNanos);
+			throughput = (throughput == 0) ? observed : THROUGHPUT_SMOOTHING * observed + (1 - THROUGHPUT_SMOOTHING) * throughput;
+
+			// Le meilleur debit s'estompe lentement pour suivre les changements de charge du serveur.
+			bestThroughput *= BEST_THROUGHPUT_DECAY;
+
+			if (throughput >= bestThroughput) {
+				bestThroughput = throughput;
+				bestSize = batchSize;
+			}
+
+			if (throughput >= DEGRADATION_TOLERANCE * bestThroughput) {
+				// Augmentation additive.
+				size += Math.max(1, INCREASE_FRACTION * capacity);
+			} else {
+				// Le debit se degrade: revenir vers la meilleure taille connue.
+				size = (size + bestSize) / 2;
+			}
+		}
+
+		synchronized void onOverload(int batchSize, int suggestedBatchSize) {
+			if (suggestedBatchSize > 0) {
+				// Le lot depassait ce que le serveur peut admettre: suivre directement sa suggestion.
+				size = Math.min(size, suggestedBatchSize);
+			} else {
+				// Diminution multiplicative a partir de la taille refusee.
+				size = Math.max(1, Math.min(size, batchSize) * DECREASE_FACTOR);
+			}
+		}
+
+		void pause(long millis) {
+			pausedUntil = Math.max(pausedUntil, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis));
+		}
+
+		boolean isPaused() {
+			return pausedUntil != 0 && System.nanoTime() - pausedUntil < 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,169 @@
+package repartiteur;
+
+import java.util.Arrays;
+import java.util.List;
+
+import shared.Opcodes;
+
+/**
+ * Tranche d'operations encodee sous forme de tableaux primitifs (voir {@link Opcodes}).
+ * 
+ * Une tranche est une vue [from, to) sur des tableaux qui ne sont jamais
+ * modifies: elle peut donc etre decoupee sans copie et envoyee telle quelle a
+ * plusieurs serveurs. Une tranche dedoublonnee porte aussi la multiplicite de
+ * chaque operation (counts); sinon chaque operation compte une fois.
+ * Une tranche lue d'un fichier connait aussi sa position dans l'entree (rang
+ * de sa premiere operation), ce qui permet de journaliser son resultat.
+ */
+public class Chunk {
+
+	private final byte[] opcodes;
+	private final int[] parameters;
+	private final int[] counts;
+	private final int from;
+	private final int to;
+	// Rang dans l'entree de l'operation "from", ou -1 si inconnu.
+	private final long position;
+
+	public Chunk(byte[] opcodes, int[] parameters) {
+		this(opcodes, parameters, null, 0, opcodes.length);
+	}
+
+	public Chunk(byte[] opcodes, int[] parameters, int from, int to) {
+		this(opcodes, parameters, null, from, to);
+	}
+
+	public Chunk(byte[] opcodes, int[] parameters, int[] counts, int from, int to) {
+		this(opcodes, parameters, counts, from, to, -1);
+	}
+
+	public Chunk(byte[] opcodes, int[] parameters, int[] counts, int from, int to, long position) {
+		this.opcodes = opcodes;
+		this.parameters = parameters;
+		this.counts = counts;
+		this.from = from;
+		this.to = to;
+		this.position = position;
+	}
+
+	/**
+	 * Regroupe plusieurs tranches en une seule (copie les donnees si necessaire).
+	 * La position est conservee si les tranches se suivent dans l'entree.
+	 */
+	public static Chunk concat(List<Chunk> chunks) {
+		if (chunks.size() == 1) {
+			return chunks.get(0);
+		}
+
+		int nbOperations = 0;
+		boolean hasCounts = false;
+		long inputPosition = chunks.get(0).position;
+		for (Chunk chunk : chunks) {
+			if (inputPosition >= 0 && chunk.position != inputPosition + nbOperations) {
+				inputPosition = -1;
+			}
+			nbOperations += chunk.size();
+			hasCounts |= chunk.hasCounts();
+		}
+
+		byte[] opcodes = new byte[nbOperations];
+		int[] parameters = new int[nbOperations];
+		int[] counts = hasCounts ? new int[nbOperations] : null;
+		int position = 0;
+		for (Chunk chunk : chunks) {
+			System.arraycopy(chunk.opcodes, chunk.from, opcodes, position, chunk.size());
+			System.arraycopy(chunk.parameters, chunk.from, parameters, position, chunk.size());
+			if (chunk.hasCounts()) {
+				System.arraycopy(chunk.counts, chunk.from, counts, position, chunk.size());
+			} else if (hasCounts) {
+				Arrays.fill(counts, position, position + chunk.size(), 1);
+			}
+			position += chunk.size();
+		}
+
+		return new Chunk(opcodes, parameters, counts, 0, nbOperations, inputPosition);
+	}
+
+	/**
+	 * Sous-tranche [start, end) relative au debut de cette tranche.
+	 */
+	public Chunk slice(int start, int end) {
+		return new Chunk(opcodes, parameters, counts, from + start, from + end, (position < 0) ? -1 : position + start);
+	}
+
+	/**
+	 * Tranche equivalente dont les tableaux ont exactement la taille de la tranche,
+	 * afin que les accesseurs ne copient plus les donnees a chaque envoi.
+	 */
+	public Chunk compact() {
+		if (from == 0 && to == opcodes.length) {
+			return this;
+		}
+		return new Chunk(getOpcodes(), getParameters(), getCounts(), 0, size(), position);
+	}
+
+	/**
+	 * Codes d'operations exacts de la tranche, prets a etre envoyes a un serveur.
+	 */
+	public byte[] getOpcodes() {
+		if (from == 0 && to == opcodes.length) {
+			return opcodes;
+		}
+		return Arrays.copyOfRange(opcodes, from, to);
+	}
+
+	/**
+	 * Parametres exacts de la tranche, prets a etre envoyes a un serveur.
+	 */
+	public int[] getParameters() {
+		if (from == 0 && to == parameters.length) {
+			return parameters;
+		}
+		return Arrays.copyOfRange(parameters, from, to);
+	}
+
+	/**
+	 * Multiplicites exactes de la tranche, ou null si chaque operation compte une fois.
+	 */
+	public int[] getCounts() {
+		if (counts == null || (from == 0 && to == counts.length)) {
+			return counts;
+		}
+		return Arrays.copyOfRange(counts, from, to);
+	}
+
+	public boolean hasCounts() {
+		return counts != null;
+	}
+
+	public byte getOpcode(int index) {
+		return opcodes[from + index];
+	}
+
+	public int getParameter(int index) {
+		return parameters[from + index];
+	}
+
+	public int getCount(int index) {
+		return (counts == null) ? 1 : counts[from + index];
+	}
+
+	/**
+	 * Rang dans l'entree de la premiere operation de la tranche, ou -1 si inconnu.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Vrai si la tranche commence dans l'entree juste apres cette tranche.
+	 */
+	public boolean isFollowedBy(Chunk next) {
+		return position >= 0 && next.position == position + size();
+	}
+
+	public int size() {
+		return to - from;
+	}
+
+}
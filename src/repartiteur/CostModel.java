@@ -0,0 +1,203 @@
+package repartiteur;
+
+import shared.Opcodes;
+
+/**
+ * Modele du temps de calcul des operations, pour former des lots de travail egal.
+ *
+ * Avec l'implementation de reference (serveur.Operations), pell(x) fait environ
+ * (1 + racine de 2)^x appels recursifs et prime(x) environ x^2 / (2 ln x)
+ * iterations (isPrime parcourt les entiers jusqu'a chaque premier). Le temps
+ * d'un lot est estime par une combinaison lineaire de ces unites:
+ *
+ *   temps = a + b * operations + c * appels de pell + d * iterations de prime
+ *
+ * Les coefficients par defaut (ns) correspondent au moteur de reference. Avec
+ * la calibration, ils sont ajustes par moindres carres, avec oubli exponentiel,
+ * sur la latence observee de chaque lot: le modele suit alors aussi un moteur
+ * rapide, ou le cout ne depend presque plus des parametres. La multiplicite
+ * d'une operation dedoublonnee ne change pas son cout (elle est calculee une fois).
+ */
+public class CostModel {
+
+	private static final double PELL_GROWTH = 1 + Math.sqrt(2);
+	private static final double[] PELL_CALLS = new double[64];
+
+	// Coefficients a priori (ns): par lot, par operation, par appel de pell, par iteration de prime.
+	private static final double[] REFERENCE_COEFFICIENTS = { 0, 50, 2, 1 };
+
+	private static final double DECAY = 0.995;
+	private static final int SOLVE_INTERVAL = 16;
+	// Rappel vers les coefficients a priori, relatif a l'information observee sur chaque coefficient.
+	private static final double RIDGE = 1e-6;
+
+	static {
+		for (int x = 0; x < PELL_CALLS.length; x++) {
+			PELL_CALLS[x] = Math.max(1, Math.pow(PELL_GROWTH, x));
+		}
+	}
+
+	private final boolean calibrated;
+	private volatile double[] coefficients = REFERENCE_COEFFICIENTS.clone();
+
+	// Equations normales des moindres carres (caracteristiques: 1, operations, appels de pell, iterations de prime).
+	private final double[][] normal = new double[4][4];
+	private final double[] moments = new double[4];
+	private long observations = 0;
+
+	/**
+	 * @param calibrated ajuster les coefficients selon les latences observees (voir {@link #observe(Chunk, long)}).
+	 */
+	public CostModel(boolean calibrated) {
+		this.calibrated = calibrated;
+	}
+
+	/**
+	 * Cout de reference d'une operation, independant de toute calibration.
+	 */
+	public static double referenceCost(byte opcode, int parameter) {
+		return cost(REFERENCE_COEFFICIENTS, opcode, parameter);
+	}
+
+	/**
+	 * Temps estime (ns) d'une operation, sans le cout fixe de son lot.
+	 */
+	public double cost(byte opcode, int parameter) {
+		return cost(coefficients, opcode, parameter);
+	}
+
+	/**
+	 * Temps estime (ns) par operation d'un ensemble d'operations dont les unites sont donnees.
+	 */
+	public double meanCost(long nbOperations, double pellCalls, double primeIterations) {
+		if (nbOperations == 0) {
+			return 0;
+		}
+
+		double[] current = coefficients;
+		return current[1] + (current[2] * pellCalls + current[3] * primeIterations) / nbOperations;
+	}
+
+	public static double pellCalls(int x) {
+		if (x < PELL_CALLS.length) {
+			// La reference ne termine pas pour x < 0: ces operations comptent comme les plus simples.
+			return PELL_CALLS[Math.max(0, x)];
+		}
+		return Math.pow(PELL_GROWTH, x);
+	}
+
+	public static double primeIterations(int x) {
+		if (x <= 2) {
+			return 1;
+		}
+		// ln(x) approche par le nombre de bits de x, pour eviter un logarithme par operation.
+		return (double) x * x / (2 * Math.log(2) * (Integer.SIZE - Integer.numberOfLeadingZeros(x)));
+	}
+
+	/**
+	 * Ajoute la latence observee d'un lot a la calibration (sans effet si le modele n'est pas calibre).
+	 */
+	public void observe(Chunk batch, long elapsedNanos) {
+		if (!calibrated) {
+			return;
+		}
+
+		double[] features = { 1, batch.size(), 0, 0 };
+		for (int i = 0; i < batch.size(); i++) {
+			if (batch.getOpcode(i) == Opcodes.PELL) {
+				features[2] += pellCalls(batch.getParameter(i));
+			} else {
+				features[3] += primeIterations(batch.getParameter(i));
+			}
+		}
+
+		synchronized (this) {
+			for (int i = 0; i < features.length; i++) {
+				for (int j = 0; j < features.length; j++) {
+					normal[i][j] = DECAY * normal[i][j] + features[i] * features[j];
+				}
+				moments[i] = DECAY * moments[i] + features[i] * elapsedNanos;
+			}
+
+			if (++observations % SOLVE_INTERVAL == 0) {
+				coefficients = solve();
+			}
+		}
+	}
+
+	public double[] getCoefficients() {
+		return coefficients.clone();
+	}
+
+	private static double cost(double[] coefficients, byte opcode, int parameter) {
+		return coefficients[1] + ((opcode == Opcodes.PELL)
+				? coefficients[2] * pellCalls(parameter)
+				: coefficients[3] * primeIterations(parameter));
+	}
+
+	/**
+	 * Resout les equations normales, mises a l'echelle de leur diagonale et rappelees vers les
+	 * coefficients a priori. Les coefficients sans observation (ex. aucune operation prime) restent a priori.
+	 */
+	private double[] solve() {
+		int n = moments.length;
+		double[] scale = new double[n];
+		double[][] system = new double[n][n + 1];
+
+		for (int i = 0; i < n; i++) {
+			scale[i] = Math.sqrt(normal[i][i]);
+		}
+		for (int i = 0; i < n; i++) {
+			if (scale[i] == 0) {
+				system[i][i] = 1;
+				system[i][n] = REFERENCE_COEFFICIENTS[i];
+				continue;
+			}
+			for (int j = 0; j < n; j++) {
+				system[i][j] = (scale[j] == 0) ? 0 : normal[i][j] / (scale[i] * scale[j]);
+			}
+			system[i][i] += RIDGE;
+			system[i][n] = moments[i] / scale[i] + RIDGE * REFERENCE_COEFFICIENTS[i] * scale[i];
+		}
+
+		// Elimination de Gauss avec pivot partiel.
+		for (int column = 0; column < n; column++) {
+			int pivot = column;
+			for (int row = column + 1; row < n; row++) {
+				if (Math.abs(system[row][column]) > Math.abs(system[pivot][column])) {
+					pivot = row;
+				}
+			}
+			if (Math.abs(system[pivot][column]) < 1e-12) {
+				return coefficients;
+			}
+
+			double[] swap = system[column];
+			system[column] = system[pivot];
+			system[pivot] = swap;
+
+			for (int row = column + 1; row < n; row++) {
+				double factor = system[row][column] / system[column][column];
+				for (int k = column; k <= n; k++) {
+					system[row][k] -= factor * system[column][k];
+				}
+			}
+		}
+
+		double[] solution = new double[n];
+		for (int row = n - 1; row >= 0; row--) {
+			double value = system[row][n];
+			for (int k = row + 1; k < n; k++) {
+				value -= system[row][k] * solution[k];
+			}
+			solution[row] = value / system[row][row];
+		}
+
+		for (int i = 0; i < n; i++) {
+			// Les coefficients observes sont remis a l'echelle; un temps negatif n'a pas de sens.
+			solution[i] = Math.max(0, (scale[i] == 0) ? solution[i] : solution[i] / scale[i]);
+		}
+		return solution;
+	}
+
+}
@@ -0,0 +1,89 @@
+package repartiteur;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Etape de tri par cout avant la repartition.
+ *
+ * Les operations lues sont conservees puis remises en ordre decroissant de
+ * cout de reference (voir CostModel). Les operations les plus longues partent
+ * donc en premier et les dernieres tranches, calculees pendant que d'autres
+ * serveurs terminent deja, sont les plus courtes: la fin du travail n'attend
+ * plus un seul serveur pris avec un lot couteux. Le resultat ne depend pas de
+ * l'ordre des operations.
+ */
+public class CostSorter implements Consumer<Chunk> {
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+
+	private byte[] opcodes = new byte[INITIAL_CAPACITY];
+	private int[] parameters = new int[INITIAL_CAPACITY];
+	private int[] counts = null;
+	private int size = 0;
+
+	/**
+	 * Ajoute les operations d'une tranche (peut etre appele de plusieurs fils).
+	 */
+	@Override
+	public synchronized void accept(Chunk chunk) {
+		ensureCapacity(size + chunk.size());
+		if (chunk.hasCounts() && counts == null) {
+			counts = new int[opcodes.length];
+			Arrays.fill(counts, 0, size, 1);
+		}
+
+		for (int i = 0; i < chunk.size(); i++) {
+			opcodes[size] = chunk.getOpcode(i);
+			parameters[size] = chunk.getParameter(i);
+			if (counts != null) {
+				counts[size] = chunk.getCount(i);
+			}
+			size++;
+		}
+	}
+
+	/**
+	 * Remet les operations au consommateur en ordre decroissant de cout, en tranches d'au plus chunkSize operations.
+	 */
+	public synchronized void emit(int chunkSize, Consumer<Chunk> consumer) {
+		// Cle: cout (float positif, dont les bits sont croissants avec la valeur) puis position.
+		long[] keys = new long[size];
+		for (int i = 0; i < size; i++) {
+			float cost = (float) CostModel.referenceCost(opcodes[i], parameters[i]);
+			keys[i] = ((long) Float.floatToIntBits(cost) << 32) | i;
+		}
+		Arrays.parallelSort(keys);
+
+		for (int start = 0; start < size; start += chunkSize) {
+			int length = Math.min(chunkSize, size - start);
+			byte[] chunkOpcodes = new byte[length];
+			int[] chunkParameters = new int[length];
+			int[] chunkCounts = (counts != null) ? new int[length] : null;
+
+			for (int j = 0; j < length; j++) {
+				int index = (int) keys[size - 1 - start - j];
+				chunkOpcodes[j] = opcodes[index];
+				chunkParameters[j] = parameters[index];
+				if (chunkCounts != null) {
+					chunkCounts[j] = counts[index];
+				}
+			}
+			consumer.accept(new Chunk(chunkOpcodes, chunkParameters, chunkCounts, 0, length));
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= opcodes.length) {
+			return;
+		}
+
+		int newCapacity = Math.max(capacity, 2 * opcodes.length);
+		opcodes = Arrays.copyOf(opcodes, newCapacity);
+		parameters = Arrays.copyOf(parameters, newCapacity);
+		if (counts != null) {
+			counts = Arrays.copyOf(counts, newCapacity);
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package repartiteur;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Etape de dedoublonnage avant la repartition.
+ * 
+ * Les operations lues sont reduites a des paires (operation, parametre)
+ * uniques avec leur multiplicite, dans une table a adressage ouvert indexee
+ * par une cle primitive (code d'operation et parametre combines dans un long),
+ * sans objet par operation. Chaque operation unique n'est ensuite envoyee
+ * qu'une seule fois, avec sa multiplicite.
+ */
+public class Deduplicator implements Consumer<Chunk> {
+
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	private static final long EMPTY = Long.MIN_VALUE;
+
+	private long[] keys;
+	private long[] counts;
+	private int size = 0;
+	private long nbOperations = 0;
+
+	public Deduplicator() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Ajoute les operations d'une tranche (peut etre appele de plusieurs fils).
+	 */
+	@Override
+	public synchronized void accept(Chunk chunk) {
+		for (int i = 0; i < chunk.size(); i++) {
+			add(key(chunk.getOpcode(i), chunk.getParameter(i)), chunk.getCount(i));
+		}
+	}
+
+	/**
+	 * Nombre d'operations lues, en comptant les doublons.
+	 */
+	public synchronized long getOperationCount() {
+		return nbOperations;
+	}
+
+	/**
+	 * Nombre d'operations uniques.
+	 */
+	public synchronized int getUniqueCount() {
+		return size;
+	}
+
+	/**
+	 * Remet les operations uniques au consommateur, en tranches d'au plus chunkSize entrees.
+	 */
+	public synchronized void emit(int chunkSize, Consumer<Chunk> consumer) {
+		byte[] chunkOpcodes = new byte[chunkSize];
+		int[] chunkParameters = new int[chunkSize];
+		int[] chunkCounts = new int[chunkSize];
+		int count = 0;
+
+		for (int slot = 0; slot < keys.length; slot++) {
+			long remaining = counts[slot];
+			while (keys[slot] != EMPTY && remaining > 0) {
+				// Une multiplicite qui depasse un int est repartie sur plusieurs entrees.
+				int multiplicity = (int) Math.min(remaining, Integer.MAX_VALUE);
+				remaining -= multiplicity;
+
+				chunkOpcodes[count] = (byte) (keys[slot] >>> 32);
+				chunkParameters[count] = (int) keys[slot];
+				chunkCounts[count] = multiplicity;
+				count++;
+
+				if (count == chunkSize) {
+					consumer.accept(new Chunk(chunkOpcodes, chunkParameters, chunkCounts, 0, count));
+					chunkOpcodes = new byte[chunkSize];
+					chunkParameters = new int[chunkSize];
+					chunkCounts = new int[chunkSize];
+					count = 0;
+				}
+			}
+		}
+
+		if (count > 0) {
+			consumer.accept(new Chunk(chunkOpcodes, chunkParameters, chunkCounts, 0, count));
+		}
+	}
+
+	private static long key(byte opcode, int parameter) {
+		return ((long) opcode << 32) | (parameter & 0xFFFFFFFFL);
+	}
+
+	private void add(long key, long count) {
+		nbOperations += count;
+
+		int slot = find(keys, key);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			size++;
+		}
+		counts[slot] += count;
+
+		// Garder la table au plus a moitie pleine.
+		if (2 * size > keys.length) {
+			long[] oldKeys = keys;
+			long[] oldCounts = counts;
+			allocate(2 * oldKeys.length);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != EMPTY) {
+					int newSlot = find(keys, oldKeys[i]);
+					keys[newSlot] = oldKeys[i];
+					counts[newSlot] = oldCounts[i];
+				}
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		counts = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+	}
+
+	private static int find(long[] table, long key) {
+		int mask = table.length - 1;
+		int slot = (int) (mix(key) & mask);
+		while (table[slot] != EMPTY && table[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static long mix(long key) {
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		return key;
+	}
+
+}
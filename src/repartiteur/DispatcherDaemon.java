@@ -0,0 +1,81 @@
+package repartiteur;
+
+import java.rmi.RemoteException;
+import java.util.concurrent.TimeUnit;
+
+import shared.DispatcherInterface;
+
+/**
+ * Point d'entree RMI du repartiteur en mode demon. Les taches recues sont
+ * ajoutees a la file partagee (voir FairJobQueue), que l'ordonnanceur du
+ * repartiteur repartit sur ses serveurs.
+ */
+public class DispatcherDaemon implements DispatcherInterface {
+
+	private final FairJobQueue jobQueue;
+	private final long maxPendingOperations;
+
+	/**
+	 * @param maxPendingOperations nombre d'operations en attente par tache au-dela duquel l'ajout bloque le client.
+	 */
+	public DispatcherDaemon(FairJobQueue jobQueue, long maxPendingOperations) {
+		this.jobQueue = jobQueue;
+		this.maxPendingOperations = maxPendingOperations;
+	}
+
+	@Override
+	public long createJob(int weight, long deadlineMillis) throws RemoteException {
+		try {
+			return jobQueue.createJob(weight, deadlineMillis);
+		} catch (IllegalArgumentException e) {
+			throw new RemoteException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void addOperations(long jobId, byte[] opcodes, int[] parameters, int[] counts) throws RemoteException {
+		if (parameters.length != opcodes.length || (counts != null && counts.length != opcodes.length)) {
+			throw new RemoteException("Les tableaux d'une tranche doivent avoir la meme longueur.");
+		}
+
+		try {
+			jobQueue.add(jobId, new Chunk(opcodes, parameters, counts, 0, opcodes.length), maxPendingOperations);
+		} catch (IllegalArgumentException e) {
+			throw new RemoteException(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Ajout interrompu.", e);
+		}
+	}
+
+	@Override
+	public void closeJob(long jobId) throws RemoteException {
+		try {
+			jobQueue.close(jobId);
+		} catch (IllegalArgumentException e) {
+			throw new RemoteException(e.getMessage());
+		}
+	}
+
+	@Override
+	public void renewJob(long jobId) throws RemoteException {
+		try {
+			jobQueue.renew(jobId);
+		} catch (IllegalArgumentException e) {
+			throw new RemoteException(e.getMessage());
+		}
+	}
+
+	@Override
+	public Integer awaitResult(long jobId, long timeoutMillis) throws RemoteException {
+		try {
+			return jobQueue.awaitResult(jobId, timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (IllegalArgumentException e) {
+			throw new RemoteException(e.getMessage());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Attente interrompue.", e);
+		}
+	}
+
+}
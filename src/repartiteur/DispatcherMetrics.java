@@ -0,0 +1,78 @@
+package repartiteur;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Mesures globales du repartiteur. La plupart sont lues directement dans la
+ * file de travail et l'ordonnanceur; seuls les lots contestes (resultats
+ * differents entre serveurs) sont comptes ici.
+ */
+public class DispatcherMetrics implements DispatcherMetricsMBean {
+
+	private final long startNanos = System.nanoTime();
+	private final BatchQueue workQueue;
+	private final Collection<?> servers;
+	private final LongAdder contestedBatches = new LongAdder();
+	private final LongAdder hedges = new LongAdder();
+	private volatile PipelinedScheduler scheduler;
+
+	public DispatcherMetrics(BatchQueue workQueue, Collection<?> servers) {
+		this.workQueue = workQueue;
+		this.servers = servers;
+	}
+
+	void setScheduler(PipelinedScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	void onContestedBatch() {
+		contestedBatches.increment();
+	}
+
+	void onHedge() {
+		hedges.increment();
+	}
+
+	@Override
+	public int getActiveServers() {
+		return servers.size();
+	}
+
+	@Override
+	public long getCompletedOperations() {
+		return workQueue.getCompletedOperations();
+	}
+
+	@Override
+	public long getPendingOperations() {
+		return workQueue.getPendingOperations();
+	}
+
+	@Override
+	public long getRequeues() {
+		return workQueue.getRequeues();
+	}
+
+	@Override
+	public int getInFlightBatches() {
+		PipelinedScheduler current = scheduler;
+		return (current == null) ? 0 : current.getInFlight();
+	}
+
+	@Override
+	public long getContestedBatches() {
+		return contestedBatches.sum();
+	}
+
+	@Override
+	public long getHedges() {
+		return hedges.sum();
+	}
+
+	@Override
+	public double getOperationsPerSecond() {
+		return workQueue.getCompletedOperations() / Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+	}
+
+}
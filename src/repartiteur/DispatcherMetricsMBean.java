@@ -0,0 +1,27 @@
+package repartiteur;
+
+/**
+ * Mesures globales du repartiteur, publiees par JMX.
+ */
+public interface DispatcherMetricsMBean {
+
+	int getActiveServers();
+
+	long getCompletedOperations();
+
+	long getPendingOperations();
+
+	long getRequeues();
+
+	int getInFlightBatches();
+
+	long getContestedBatches();
+
+	/**
+	 * Lots relances sur un second serveur (mode securise avec relance).
+	 */
+	long getHedges();
+
+	double getOperationsPerSecond();
+
+}
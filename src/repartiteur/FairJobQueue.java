@@ -0,0 +1,386 @@
+package repartiteur;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import shared.DispatcherInterface;
+
+/**
+ * File de travail partagee par plusieurs taches (mode demon).
+ *
+ * Chaque tache a sa propre file. A chaque reclamation, la tache servie est
+ * choisie ainsi: d'abord les taches avec une echeance, la plus proche en
+ * premier; puis les autres selon leur temps virtuel (ordonnancement par pas):
+ * chaque lot avance le temps virtuel de sa tache de taille / poids, et la
+ * tache la moins avancee est servie. Une tache de poids 2 recoit donc deux
+ * fois plus d'operations qu'une tache de poids 1.
+ *
+ * Chaque lot reclame est une tranche distincte associee a sa tache: les
+ * confirmations, les remises dans la file et les resultats des executeurs
+ * sont ainsi rapportes a la bonne tache sans qu'ils la connaissent. Cette
+ * association est gardee jusqu'a la fin de la tache, pour qu'un lot confirme
+ * puisse encore etre remis dans la file de sa tache.
+ *
+ * Chaque tache a un bail, renouvele par chaque appel de son client. Une tache
+ * dont le client ne s'est pas manifeste depuis {@link DispatcherInterface#JOB_LEASE_MS}
+ * est oubliee: une tache abandonnee ne retient plus ses operations, et le
+ * resultat d'une tache terminee mais jamais reclame est perdu.
+ *
+ * La file ne se termine qu'une fois fermee (plus aucune tache acceptee) et
+ * toutes les operations confirmees.
+ */
+public class FairJobQueue implements BatchQueue {
+
+	private static final long NO_DEADLINE = Long.MAX_VALUE;
+	private static final long LEASE_NANOS = TimeUnit.MILLISECONDS.toNanos(DispatcherInterface.JOB_LEASE_MS);
+	// Intervalle minimal entre deux recherches de taches expirees.
+	private static final long EXPIRY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final CostModel costModel;
+	private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+	private final Map<Chunk, Job> owners = new ConcurrentHashMap<>();
+	private final AtomicLong nextJobId = new AtomicLong();
+
+	private final AtomicLong pendingOperations = new AtomicLong();
+	private final LongAdder completedOperations = new LongAdder();
+	private final LongAdder requeues = new LongAdder();
+	private final Object signal = new Object();
+	private volatile boolean closed = false;
+
+	// Temps virtuel du dernier lot reclame (sous le verrou de la file).
+	private double virtualTime = 0;
+	private long lastExpiry = System.nanoTime();
+
+	/**
+	 * @param costModel modele de cout des lots de chaque tache (null: lots formes par nombre d'operations).
+	 */
+	public FairJobQueue(CostModel costModel) {
+		this.costModel = costModel;
+	}
+
+	/**
+	 * Cree une tache et retourne son identifiant.
+	 *
+	 * @param deadlineMillis echeance relative a maintenant, ou 0 si aucune.
+	 */
+	public synchronized long createJob(int weight, long deadlineMillis) {
+		if (weight < 1) {
+			throw new IllegalArgumentException("Le poids d'une tache doit etre positif.");
+		}
+		if (closed) {
+			throw new IllegalStateException("La file n'accepte plus de taches.");
+		}
+
+		long deadline = deadlineMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis) : NO_DEADLINE;
+		long jobId = nextJobId.incrementAndGet();
+		jobs.put(jobId, new Job(new WorkQueue(costModel), weight, deadline, virtualTime));
+		return jobId;
+	}
+
+	/**
+	 * Ajoute une tranche a une tache, en attendant que la tache ait moins de maxPendingOperations en attente.
+	 */
+	public void add(long jobId, Chunk chunk, long maxPendingOperations) throws InterruptedException {
+		Job job = enter(jobId);
+		try {
+			// Compter la tranche avant qu'elle puisse etre reclamee, et l'oublier si l'attente est interrompue.
+			pendingOperations.addAndGet(chunk.size());
+			try {
+				job.queue.put(chunk, maxPendingOperations);
+			} catch (InterruptedException e) {
+				pendingOperations.addAndGet(-chunk.size());
+				throw e;
+			}
+			signalAll();
+		} finally {
+			leave(job);
+		}
+	}
+
+	public void close(long jobId) {
+		Job job = enter(jobId);
+		try {
+			job.queue.close();
+			finishIfDone(job);
+		} finally {
+			leave(job);
+		}
+	}
+
+	/**
+	 * Prolonge le bail d'une tache.
+	 */
+	public void renew(long jobId) {
+		leave(enter(jobId));
+	}
+
+	/**
+	 * Attend au plus timeout le resultat d'une tache. Retourne null si elle n'est pas terminee.
+	 */
+	public Integer awaitResult(long jobId, long timeout, TimeUnit unit) throws InterruptedException {
+		Job job = enter(jobId);
+		try {
+			int result = job.result.get(timeout, unit);
+			jobs.remove(jobId);
+			return result;
+		} catch (TimeoutException e) {
+			return null;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			leave(job);
+		}
+	}
+
+	/**
+	 * Nombre de taches creees dont le resultat n'a pas encore ete retourne.
+	 */
+	public int getJobCount() {
+		return jobs.size();
+	}
+
+	@Override
+	public synchronized Chunk claim(int maxOperations) {
+		if (maxOperations < 1) {
+			return null;
+		}
+
+		long now = System.nanoTime();
+		if (now - lastExpiry >= EXPIRY_INTERVAL_NANOS) {
+			expireJobs(now);
+			lastExpiry = now;
+		}
+
+		List<Job> candidates = new ArrayList<>(jobs.values());
+		candidates.sort(Comparator.comparingLong((Job job) -> job.deadline).thenComparingDouble(job -> job.pass));
+
+		for (Job job : candidates) {
+			Chunk chunk = job.queue.claim(maxOperations);
+			if (chunk == null) {
+				continue;
+			}
+
+			// Une tache restee inactive reprend au temps virtuel courant, sans rattraper son retard.
+			double start = Math.max(job.pass, virtualTime);
+			virtualTime = start;
+			job.pass = start + (double) chunk.size() / job.weight;
+			job.inFlight.incrementAndGet();
+
+			// Une vue distincte par reclamation: la tranche identifie sa tache, meme si elle est reclamee a nouveau.
+			Chunk batch = chunk.slice(0, chunk.size());
+			owners.put(batch, job);
+			return batch;
+		}
+		return null;
+	}
+
+	@Override
+	public void awaitChange(long timeout, TimeUnit unit) throws InterruptedException {
+		synchronized (signal) {
+			if (!isDone()) {
+				TimeUnit.MILLISECONDS.timedWait(signal, Math.max(1, unit.toMillis(timeout)));
+			}
+		}
+	}
+
+	@Override
+	public void requeue(Chunk chunk) {
+		Job job = owners.get(chunk);
+		synchronized (job) {
+			if (job.expired) {
+				// La tache a ete oubliee: ses operations ne sont plus reparties.
+				return;
+			}
+			requeues.increment();
+			job.queue.requeue(chunk);
+		}
+		signalAll();
+	}
+
+	@Override
+	public boolean reopen(Chunk chunk, int result) {
+		Job job = owners.get(chunk);
+		if (job == null) {
+			return false;
+		}
+		synchronized (job) {
+			if (job.expired || job.result.isDone()) {
+				// Le resultat de la tache a deja ete rendu (ou ne le sera jamais).
+				return false;
+			}
+			requeues.increment();
+			job.queue.reopen(chunk, result);
+			job.partialResult.accumulateAndGet(result, (total, value) -> Math.floorMod(total - value, 4000));
+		}
+		completedOperations.add(-chunk.size());
+		pendingOperations.addAndGet(chunk.size());
+		signalAll();
+		return true;
+	}
+
+	@Override
+	public void complete(Chunk chunk) {
+		Job job = owners.get(chunk);
+		synchronized (job) {
+			if (job.expired) {
+				// Les operations de la tache ont deja ete retirees du compte a son expiration.
+				return;
+			}
+			job.queue.complete(chunk);
+		}
+		completedOperations.add(chunk.size());
+		if (pendingOperations.addAndGet(-chunk.size()) == 0) {
+			signalAll();
+		}
+	}
+
+	/**
+	 * Combine le resultat du lot a celui de sa tache, et termine la tache si c'etait son dernier lot.
+	 */
+	@Override
+	public void onResult(Chunk batch, int result) {
+		Job job = owners.get(batch);
+		if (job == null) {
+			return;
+		}
+		if (job.expired) {
+			// Une tache oubliee ne se termine jamais: ne plus garder ses lots.
+			owners.remove(batch);
+			return;
+		}
+
+		job.partialResult.accumulateAndGet(result, (total, value) -> (total + value) % 4000);
+		job.inFlight.decrementAndGet();
+		finishIfDone(job);
+	}
+
+	@Override
+	public long getPendingOperations() {
+		return pendingOperations.get();
+	}
+
+	@Override
+	public long getCompletedOperations() {
+		return completedOperations.sum();
+	}
+
+	@Override
+	public long getRequeues() {
+		return requeues.sum();
+	}
+
+	/**
+	 * Refuse les nouvelles taches. Les taches creees sont menees a terme.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		signalAll();
+	}
+
+	/**
+	 * Vrai si la file est fermee et que toutes les operations des taches ont ete confirmees.
+	 */
+	@Override
+	public boolean isDone() {
+		return closed && pendingOperations.get() == 0;
+	}
+
+	/**
+	 * Debut d'un appel du client de la tache: la tache n'expire pas pendant l'appel.
+	 * Synchronise avec claim(), qui retire les taches expirees.
+	 */
+	private synchronized Job enter(long jobId) {
+		Job job = jobs.get(jobId);
+		if (job == null) {
+			throw new IllegalArgumentException("Tache inconnue: " + jobId);
+		}
+		job.clientCalls.incrementAndGet();
+		return job;
+	}
+
+	private void leave(Job job) {
+		job.lastContact = System.nanoTime();
+		job.clientCalls.decrementAndGet();
+	}
+
+	/**
+	 * Oublie les taches dont le client ne s'est pas manifeste depuis la duree du bail
+	 * (sous le verrou de la file). Les lots deja reclames sont ignores a leur retour.
+	 */
+	private void expireJobs(long now) {
+		jobs.entrySet().removeIf(entry -> {
+			Job job = entry.getValue();
+			if (job.clientCalls.get() > 0 || now - job.lastContact < LEASE_NANOS) {
+				return false;
+			}
+
+			synchronized (job) {
+				job.expired = true;
+				pendingOperations.addAndGet(-job.queue.getPendingOperations());
+			}
+			System.out.println("Tâche " + entry.getKey() + " expirée: aucune nouvelle du client.");
+			return true;
+		});
+		signalAll();
+	}
+
+	/**
+	 * Termine la tache si possible, et oublie alors ses lots: ils ne peuvent plus etre remis dans la file.
+	 */
+	private void finishIfDone(Job job) {
+		if (job.finishIfDone()) {
+			owners.values().removeIf(owner -> owner == job);
+		}
+	}
+
+	private void signalAll() {
+		synchronized (signal) {
+			signal.notifyAll();
+		}
+	}
+
+	private static class Job {
+
+		final WorkQueue queue;
+		final int weight;
+		final long deadline;
+		final AtomicInteger partialResult = new AtomicInteger();
+		// Lots reclames dont le resultat n'a pas encore ete combine.
+		final AtomicInteger inFlight = new AtomicInteger();
+		final CompletableFuture<Integer> result = new CompletableFuture<>();
+		// Appels du client en cours et fin du dernier appel (bail de la tache).
+		final AtomicInteger clientCalls = new AtomicInteger();
+		volatile long lastContact = System.nanoTime();
+		// Vrai une fois la tache oubliee (sous le verrou de la tache).
+		boolean expired = false;
+		double pass;
+
+		Job(WorkQueue queue, int weight, long deadline, double pass) {
+			this.queue = queue;
+			this.weight = weight;
+			this.deadline = deadline;
+			this.pass = pass;
+		}
+
+		/**
+		 * Termine la tache si elle est fermee, que toutes ses operations sont confirmees et tous ses resultats combines.
+		 * Synchronise avec reopen(). Retourne vrai si la tache vient d'etre terminee.
+		 */
+		synchronized boolean finishIfDone() {
+			return inFlight.get() == 0 && queue.isDone() && result.complete(partialResult.get());
+		}
+
+	}
+
+}
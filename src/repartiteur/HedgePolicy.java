@@ -0,0 +1,128 @@
+package repartiteur;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shared.ServerInterface;
+
+/**
+ * Relance des lots en retard en mode securise.
+ *
+ * Le delai de relance d'un lot est un centile des latences recentes par
+ * operation (les derniers lots reussis), multiplie par la taille du lot. Un
+ * lot sans reponse apres ce delai est envoye aussi a un serveur inactif, et la
+ * premiere reponse est retenue. La charge ajoutee est bornee par un budget:
+ * chaque lot envoye accorde une fraction de relance, et une relance n'est
+ * permise que si une relance entiere a ete accumulee.
+ */
+public class HedgePolicy {
+
+	// Nombre de lots reussis dont la latence est conservee.
+	private static final int WINDOW = 256;
+	// Aucune relance avant d'avoir observe assez de lots.
+	private static final int MIN_SAMPLES = 16;
+	// Relances accumulees au plus, pour qu'une longue periode calme ne permette pas une rafale.
+	private static final double MAX_TOKENS = 10;
+
+	private final double percentile;
+	private final double budget;
+
+	// Latences recentes par operation (ns), en anneau.
+	private final double[] latencies = new double[WINDOW];
+	private int nbSamples = 0;
+	private double tokens = 0;
+
+	private final Map<ServerInterface, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+
+	/**
+	 * @param percentile centile des latences recentes au-dela duquel un lot est relance (ex. 0.95).
+	 * @param budget fraction des lots qui peuvent etre relances (ex. 0.05).
+	 */
+	public HedgePolicy(double percentile, double budget) {
+		if (percentile <= 0 || percentile >= 1) {
+			throw new IllegalArgumentException("Le centile de relance doit etre entre 0 et 1.");
+		}
+		if (budget <= 0 || budget > 1) {
+			throw new IllegalArgumentException("Le budget de relance doit etre entre 0 et 1.");
+		}
+
+		this.percentile = percentile;
+		this.budget = budget;
+	}
+
+	/**
+	 * Un lot est envoye: il accorde sa part du budget de relance.
+	 */
+	public synchronized void onBatch() {
+		tokens = Math.min(MAX_TOKENS, tokens + budget);
+	}
+
+	/**
+	 * Delai (ns) avant de relancer un lot de nbOperations, ou -1 si les latences observees ne suffisent pas encore.
+	 */
+	public synchronized long getDeadlineNanos(int nbOperations) {
+		if (nbSamples < MIN_SAMPLES) {
+			return -1;
+		}
+
+		double[] recent = Arrays.copyOf(latencies, Math.min(nbSamples, WINDOW));
+		Arrays.sort(recent);
+		int rank = (int) Math.min(recent.length - 1, Math.ceil(percentile * recent.length) - 1);
+		return (long) Math.max(1, recent[Math.max(0, rank)] * nbOperations);
+	}
+
+	/**
+	 * Reserve une relance du budget. Retourne faux si le budget est epuise.
+	 */
+	public synchronized boolean tryAcquire() {
+		if (tokens < 1) {
+			return false;
+		}
+		tokens -= 1;
+		return true;
+	}
+
+	/**
+	 * Un appel de calcul commence sur le serveur.
+	 */
+	public void onStart(ServerInterface server) {
+		outstanding.computeIfAbsent(server, key -> new AtomicInteger()).incrementAndGet();
+	}
+
+	/**
+	 * Un appel de calcul se termine sur le serveur; sa latence n'est retenue que s'il a reussi.
+	 */
+	public void onEnd(ServerInterface server, int nbOperations, long latencyNanos, boolean success) {
+		outstanding.get(server).decrementAndGet();
+		if (!success) {
+			return;
+		}
+
+		synchronized (this) {
+			latencies[nbSamples % WINDOW] = (double) latencyNanos / Math.max(1, nbOperations);
+			nbSamples++;
+		}
+	}
+
+	/**
+	 * Un serveur sans appel en cours, autre que ceux exclus, ou null si tous sont occupes.
+	 */
+	public ServerInterface pickIdle(Collection<ServerInterface> servers, Collection<ServerInterface> excluded) {
+		List<ServerInterface> candidates = new ArrayList<>(servers);
+		Collections.shuffle(candidates);
+		for (ServerInterface server : candidates) {
+			AtomicInteger calls = outstanding.get(server);
+			if (!excluded.contains(server) && (calls == null || calls.get() == 0)) {
+				return server;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,67 @@
+package repartiteur;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import shared.ServerConfig;
+import shared.ServerLoad;
+
+/**
+ * Ponderation de la repartition selon la charge publiee par les serveurs.
+ *
+ * Le debit disponible d'un serveur est sa capacite effective mesuree
+ * (operations par seconde d'activite, tous fils confondus), reduite par l'attente
+ * estimee de ses operations en cours: un serveur occupe par une autre tache
+ * depuis plusieurs secondes recoit peu de travail. Le nombre de lots en cours
+ * d'un serveur est la profondeur du pipeline ponderee par son debit
+ * disponible relatif a la moyenne, entre 1 et deux fois la profondeur.
+ * Un serveur sans rapport ou sans mesure garde la profondeur normale, sauf
+ * s'il a des operations en cours sans avoir encore termine de lot: il n'a
+ * alors qu'un lot a la fois.
+ */
+public class LoadTracker {
+
+	// Attente (s) qui reduit de moitie le debit disponible d'un serveur.
+	private static final double REFERENCE_WAIT_SECONDS = 1;
+	private static final int MAX_DEPTH_FACTOR = 2;
+
+	private volatile Map<ServerConfig, Double> weights = new HashMap<>();
+
+	/**
+	 * Remplace les charges connues par celles publiees au service des noms.
+	 */
+	public void update(List<ServerLoad> loads) {
+		Map<ServerConfig, Double> available = new HashMap<>();
+		Map<ServerConfig, Double> relative = new HashMap<>();
+		double total = 0;
+		for (ServerLoad load : loads) {
+			double rate = load.getEffectiveOperationsPerSecond();
+			if (rate > 0) {
+				double spare = rate / (1 + load.getExpectedWaitSeconds() / REFERENCE_WAIT_SECONDS);
+				available.put(load.getServer(), spare);
+				total += spare;
+			} else if (load.getInFlightOperations() > 0) {
+				// Des operations en cours sans aucun lot termine: le serveur est bloque sur un lot long.
+				relative.put(load.getServer(), 0.0);
+			}
+		}
+
+		for (Map.Entry<ServerConfig, Double> entry : available.entrySet()) {
+			relative.put(entry.getKey(), entry.getValue() * available.size() / total);
+		}
+		this.weights = relative;
+	}
+
+	/**
+	 * Nombre de lots en cours pour le serveur, selon son debit disponible.
+	 */
+	public int getDepth(ServerConfig server, int depth) {
+		Double weight = (server != null) ? weights.get(server) : null;
+		if (weight == null) {
+			return depth;
+		}
+		return (int) Math.max(1, Math.min(MAX_DEPTH_FACTOR * depth, Math.round(depth * weight)));
+	}
+
+}
@@ -0,0 +1,235 @@
+package repartiteur;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import shared.NioProtocol;
+import shared.ServerInterface;
+import shared.ServerOverloadedException;
+
+/**
+ * Acces a un serveur par le transport NIO (voir NioProtocol).
+ *
+ * Une seule connexion persistante est ouverte par serveur. Chaque requete
+ * porte un identifiant, ce qui permet d'envoyer plusieurs lots sans attendre
+ * les reponses: un fil de lecture complete le futur de chaque requete a
+ * l'arrivee de sa reponse. Les erreurs de connexion sont rapportees comme
+ * des RemoteException, comme avec Java RMI.
+ */
+public class NioServerStub implements ServerInterface {
+
+	private final SocketChannel channel;
+	private final AtomicLong nextRequestId = new AtomicLong();
+	private final Map<Long, CompletableFuture<ByteBuffer>> pendingRequests = new ConcurrentHashMap<>();
+	private final Object writeLock = new Object();
+	private volatile boolean closed = false;
+
+	private NioServerStub(SocketChannel channel) {
+		this.channel = channel;
+	}
+
+	public static NioServerStub connect(String hostname, int port) throws IOException {
+		SocketChannel channel = SocketChannel.open(new InetSocketAddress(hostname, port));
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+		NioServerStub stub = new NioServerStub(channel);
+		Thread reader = new Thread(stub::readResponses, "nio-" + hostname + ":" + port);
+		reader.setDaemon(true);
+		reader.start();
+		return stub;
+	}
+
+	@Override
+	public boolean authenticate(String username, String password) throws RemoteException {
+		long requestId = nextRequestId.incrementAndGet();
+		return await(send(requestId, NioProtocol.encodeAuthenticate(requestId, username, password))) == 1;
+	}
+
+	/**
+	 * Le transport NIO ne transmet que des lots encodes.
+	 */
+	@Override
+	public int calculate(List<String> operations) throws RemoteException {
+		throw new RemoteException("Le transport NIO ne supporte pas les lots de chaines.");
+	}
+
+	/**
+	 * Le transport NIO ne transmet que des resultats de lots entiers.
+	 */
+	@Override
+	public int[] calculateBlocks(byte[] opcodes, int[] parameters, int[] counts, int blockSize) throws RemoteException {
+		throw new RemoteException("Le transport NIO ne supporte pas les resultats par bloc.");
+	}
+
+	@Override
+	public int calculate(byte[] opcodes, int[] parameters) throws ServerOverloadedException, RemoteException {
+		return awaitCalculate(calculateAsync(opcodes, parameters, null));
+	}
+
+	@Override
+	public int calculate(byte[] opcodes, int[] parameters, int[] counts) throws ServerOverloadedException, RemoteException {
+		return awaitCalculate(calculateAsync(opcodes, parameters, counts));
+	}
+
+	/**
+	 * Envoie un lot sans bloquer. Le futur echoue avec une ServerOverloadedException
+	 * si le serveur refuse le lot, ou une RemoteException si la connexion est perdue.
+	 */
+	public CompletableFuture<Integer> calculateAsync(byte[] opcodes, int[] parameters, int[] counts) {
+		long requestId = nextRequestId.incrementAndGet();
+		return send(requestId, NioProtocol.encodeCalculate(requestId, opcodes, parameters, counts));
+	}
+
+	public void close() {
+		closed = true;
+		try {
+			channel.close();
+		} catch (IOException e) {
+			System.out.println("Erreur: " + e.getMessage());
+		}
+	}
+
+	private CompletableFuture<Integer> send(long requestId, ByteBuffer frame) {
+		CompletableFuture<ByteBuffer> response = new CompletableFuture<>();
+		pendingRequests.put(requestId, response);
+
+		try {
+			if (closed) {
+				throw new IOException("Connexion fermee.");
+			}
+			synchronized (writeLock) {
+				while (frame.hasRemaining()) {
+					channel.write(frame);
+				}
+			}
+		} catch (IOException e) {
+			pendingRequests.remove(requestId);
+			response.completeExceptionally(new RemoteException("Connexion perdue avec le serveur.", e));
+		}
+
+		return response.thenApply(NioServerStub::decodeResponse);
+	}
+
+	private static int decodeResponse(ByteBuffer frame) {
+		byte status = frame.get();
+		switch (status) {
+			case NioProtocol.OK:
+				return frame.getInt();
+			case NioProtocol.OVERLOADED:
+				throw new ResponseException(NioProtocol.decodeOverloaded(frame));
+			default:
+				throw new ResponseException(new RemoteException(NioProtocol.readString(frame)));
+		}
+	}
+
+	private void readResponses() {
+		ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+		Exception failure = null;
+
+		try {
+			while (true) {
+				length.clear();
+				readFully(length);
+
+				// Une longueur invalide ferme la connexion plutot que d'allouer une trame arbitraire.
+				int frameLength = length.getInt(0);
+				if (frameLength < NioProtocol.HEADER_SIZE || frameLength > NioProtocol.MAX_FRAME_SIZE) {
+					throw new IOException("Trame invalide de " + frameLength + " octets.");
+				}
+
+				ByteBuffer frame = ByteBuffer.allocate(frameLength);
+				readFully(frame);
+				frame.flip();
+
+				CompletableFuture<ByteBuffer> response = pendingRequests.remove(frame.getLong());
+				if (response != null) {
+					// Le futur est complete sur ce fil: les suites doivent rester courtes.
+					response.complete(frame);
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// Toute erreur de lecture termine la connexion: aucune reponse ne pourrait plus etre associee a sa requete.
+			failure = e;
+		}
+
+		// Faire echouer les requetes en cours pour qu'elles soient remises dans la file de travail.
+		closed = true;
+		for (Long requestId : pendingRequests.keySet()) {
+			CompletableFuture<ByteBuffer> response = pendingRequests.remove(requestId);
+			if (response != null) {
+				response.completeExceptionally(new RemoteException("Connexion perdue avec le serveur.", failure));
+			}
+		}
+	}
+
+	private void readFully(ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private int await(CompletableFuture<Integer> future) throws RemoteException {
+		try {
+			return awaitCalculate(future);
+		} catch (ServerOverloadedException e) {
+			throw new RemoteException(e.getMessage(), e);
+		}
+	}
+
+	private int awaitCalculate(CompletableFuture<Integer> future) throws ServerOverloadedException, RemoteException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RemoteException("Calcul interrompu.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = unwrap(e);
+			if (cause instanceof ServerOverloadedException) {
+				throw (ServerOverloadedException) cause;
+			}
+			if (cause instanceof RemoteException) {
+				throw (RemoteException) cause;
+			}
+			throw new RemoteException(cause.getMessage(), cause);
+		}
+	}
+
+	/**
+	 * Retourne l'exception d'origine d'un futur echoue (ServerOverloadedException ou RemoteException).
+	 */
+	public static Throwable unwrap(Throwable e) {
+		while ((e instanceof ExecutionException || e instanceof CompletionException
+				|| e instanceof ResponseException) && e.getCause() != null) {
+			e = e.getCause();
+		}
+		return e;
+	}
+
+	/**
+	 * Transporte une exception verifiee hors d'une suite de CompletableFuture.
+	 */
+	private static class ResponseException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		ResponseException(Exception cause) {
+			super(cause.getMessage(), cause);
+		}
+
+	}
+
+}
@@ -0,0 +1,328 @@
+package repartiteur;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import shared.Opcodes;
+
+/**
+ * Lecteur de fichiers d'operations par projection en memoire (mmap).
+ * 
+ * Le fichier est projete par fenetres et analyse octet par octet, directement
+ * vers des tranches de tableaux primitifs, sans creer de String. Chaque tranche
+ * est remise au consommateur des qu'elle est pleine: la repartition peut donc
+ * commencer avant la fin de la lecture.
+ * 
+ * Deux formats sont supportes:
+ *   - texte: une operation par ligne ("pell 24", "prime 5571", ...);
+ *   - binaire precompile (voir {@link #compile(File, File, int)}): un entete,
+ *     les tranches puis un index des tranches, ce qui permet de decoder les
+ *     tranches en parallele.
+ *
+ * Un flux texte sans fin connue (entree standard, fichier qui grandit) est lu
+ * par {@link #readStream(InputStream, int, long, Consumer)}, avec le meme
+ * analyseur.
+ */
+public class OperationReader {
+
+	public static final int DEFAULT_CHUNK_SIZE = 4096;
+
+	// "NUAG" en ASCII.
+	private static final int BINARY_MAGIC = 0x4E554147;
+	// Entete: code magique, nombre de tranches et position de l'index.
+	private static final int BINARY_HEADER_SIZE = 16;
+	private static final long WINDOW_SIZE = 64L << 20;
+	private static final byte[] PELL = { 'p', 'e', 'l', 'l' };
+	private static final int STREAM_BUFFER_SIZE = 1 << 16;
+	private static final long STREAM_POLL_MS = 5;
+	private static final long FOLLOW_POLL_MS = 100;
+
+	private final int chunkSize;
+	private final Consumer<Chunk> consumer;
+
+	// Etat de l'analyse, conserve d'une fenetre a l'autre.
+	private byte[] opcodes;
+	private int[] parameters;
+	private int count;
+	// Premiere case des tableaux pas encore remise au consommateur, et rang de son operation.
+	private int start;
+	private long position;
+	private boolean inParameter;
+	private boolean hasToken;
+	private int nameLength;
+	private boolean isPell;
+	private boolean negative;
+	private int parameter;
+
+	private OperationReader(int chunkSize, Consumer<Chunk> consumer) {
+		this.chunkSize = chunkSize;
+		this.consumer = consumer;
+		newChunk();
+	}
+
+	/**
+	 * Lit le fichier (texte ou binaire) et remet chaque tranche au consommateur.
+	 * Le consommateur peut etre appele de plusieurs fils pour un fichier binaire.
+	 */
+	public static void read(File file, int chunkSize, Consumer<Chunk> consumer) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+				FileChannel channel = randomAccessFile.getChannel()) {
+			long size = channel.size();
+
+			if (size >= BINARY_HEADER_SIZE) {
+				ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, BINARY_HEADER_SIZE);
+				if (header.getInt(0) == BINARY_MAGIC) {
+					readBinary(channel, header.getInt(4), header.getLong(8), consumer);
+					return;
+				}
+			}
+
+			OperationReader reader = new OperationReader(chunkSize, consumer);
+			for (long position = 0; position < size; position += WINDOW_SIZE) {
+				MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(WINDOW_SIZE, size - position));
+				reader.parse(window);
+			}
+			reader.finish();
+		}
+	}
+
+	/**
+	 * Lit un flux texte jusqu'a sa fin. Si aucune donnee n'arrive pendant flushMillis,
+	 * la tranche partielle est remise au consommateur: les operations sont reparties
+	 * par micro-lots sans attendre qu'une tranche soit pleine.
+	 */
+	public static void readStream(InputStream input, int chunkSize, long flushMillis, Consumer<Chunk> consumer)
+			throws IOException {
+		OperationReader reader = new OperationReader(chunkSize, consumer);
+		byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+		long idleSince = System.nanoTime();
+
+		while (true) {
+			if (reader.count > reader.start && input.available() == 0) {
+				// Attendre la suite du flux sans bloquer, pour pouvoir remettre la tranche partielle.
+				if (System.nanoTime() - idleSince >= TimeUnit.MILLISECONDS.toNanos(flushMillis)) {
+					reader.flush();
+				} else {
+					sleep(STREAM_POLL_MS);
+				}
+				continue;
+			}
+
+			int n = input.read(buffer);
+			if (n < 0) {
+				break;
+			}
+			reader.parse(ByteBuffer.wrap(buffer, 0, n));
+			idleSince = System.nanoTime();
+		}
+		reader.finish();
+	}
+
+	/**
+	 * Flux qui suit un fichier a mesure qu'il grandit (comme "tail -f"): il ne se termine jamais.
+	 */
+	public static InputStream follow(File file) throws IOException {
+		return new FileInputStream(file) {
+
+			@Override
+			public int read(byte[] buffer) throws IOException {
+				return read(buffer, 0, buffer.length);
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int n;
+				while ((n = super.read(buffer, offset, length)) < 0) {
+					sleep(FOLLOW_POLL_MS);
+				}
+				return n;
+			}
+
+		};
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		}
+	}
+
+	private void parse(ByteBuffer window) {
+		int limit = window.limit();
+		for (int i = 0; i < limit; i++) {
+			byte c = window.get(i);
+
+			if (c == '\n' || c == '\r') {
+				endLine();
+			} else if (c == ' ' || c == '\t') {
+				if (hasToken) {
+					inParameter = true;
+				}
+			} else if (!inParameter) {
+				hasToken = true;
+				isPell = (nameLength == 0 || isPell) && nameLength < PELL.length && c == PELL[nameLength];
+				nameLength++;
+			} else if (c == '-') {
+				negative = true;
+			} else if (c >= '0' && c <= '9') {
+				parameter = parameter * 10 + (c - '0');
+			}
+		}
+	}
+
+	private void endLine() {
+		if (hasToken) {
+			opcodes[count] = (isPell && nameLength == PELL.length) ? Opcodes.PELL : Opcodes.PRIME;
+			parameters[count] = negative ? -parameter : parameter;
+			count++;
+
+			if (count == chunkSize) {
+				flush();
+			}
+		}
+
+		inParameter = false;
+		hasToken = false;
+		nameLength = 0;
+		isPell = false;
+		negative = false;
+		parameter = 0;
+	}
+
+	private void finish() {
+		// La derniere ligne peut ne pas se terminer par un saut de ligne.
+		endLine();
+		flush();
+	}
+
+	/**
+	 * Remet au consommateur les operations lues depuis la derniere tranche.
+	 *
+	 * Une tranche partielle (entree continue) est une vue sur les tableaux en cours,
+	 * que les operations suivantes continuent de remplir: des micro-lots d'une
+	 * operation ne retiennent pas chacun des tableaux de chunkSize cases.
+	 */
+	private void flush() {
+		if (count > start) {
+			consumer.accept(new Chunk(opcodes, parameters, null, start, count, position));
+			position += count - start;
+			start = count;
+		}
+		if (count == chunkSize) {
+			newChunk();
+		}
+	}
+
+	private void newChunk() {
+		opcodes = new byte[chunkSize];
+		parameters = new int[chunkSize];
+		count = 0;
+		start = 0;
+	}
+
+	private static void readBinary(FileChannel channel, int nbChunks, long indexPosition, Consumer<Chunk> consumer)
+			throws IOException {
+		// Index: pour chaque tranche, sa position (long) et son nombre d'operations (int).
+		ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexPosition, 12L * nbChunks);
+		long[] positions = new long[nbChunks];
+		int[] sizes = new int[nbChunks];
+		long[] ranks = new long[nbChunks];
+		for (int i = 0; i < nbChunks; i++) {
+			positions[i] = index.getLong(12 * i);
+			sizes[i] = index.getInt(12 * i + 8);
+			ranks[i] = (i == 0) ? 0 : ranks[i - 1] + sizes[i - 1];
+		}
+
+		try {
+			IntStream.range(0, nbChunks).parallel().forEach(i -> {
+				try {
+					// Une tranche: les codes d'operations suivis des parametres.
+					ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, positions[i], 5L * sizes[i]);
+					byte[] opcodes = new byte[sizes[i]];
+					int[] parameters = new int[sizes[i]];
+					buffer.get(opcodes);
+					buffer.asIntBuffer().get(parameters);
+					consumer.accept(new Chunk(opcodes, parameters, null, 0, sizes[i], ranks[i]));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Precompile un fichier d'operations texte vers le format binaire indexe.
+	 * Les tranches sont ecrites au fur et a mesure; l'index est ecrit a la fin.
+	 */
+	public static void compile(File source, File destination, int chunkSize) throws IOException {
+		List<long[]> index = new ArrayList<>();
+
+		try (RandomAccessFile output = new RandomAccessFile(destination, "rw")) {
+			output.setLength(0);
+			output.seek(BINARY_HEADER_SIZE);
+
+			read(source, chunkSize, chunk -> {
+				try {
+					ByteBuffer buffer = ByteBuffer.allocate(5 * chunk.size());
+					buffer.put(chunk.getOpcodes());
+					buffer.asIntBuffer().put(chunk.getParameters());
+					index.add(new long[] { output.getFilePointer(), chunk.size() });
+					output.write(buffer.array());
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+
+			long indexPosition = output.getFilePointer();
+			ByteBuffer buffer = ByteBuffer.allocate(12 * index.size());
+			for (long[] entry : index) {
+				buffer.putLong(entry[0]);
+				buffer.putInt((int) entry[1]);
+			}
+			output.write(buffer.array());
+
+			output.seek(0);
+			output.writeInt(BINARY_MAGIC);
+			output.writeInt(index.size());
+			output.writeLong(indexPosition);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Usage: java repartiteur.OperationReader [fichier texte] [fichier binaire]
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Erreur: Usage: OperationReader [fichier texte] [fichier binaire]");
+			return;
+		}
+
+		try {
+			compile(new File(args[0]), new File(args[1]), DEFAULT_CHUNK_SIZE);
+		} catch (IOException e) {
+			System.out.println("Erreur: " + e.getMessage());
+		}
+	}
+
+}
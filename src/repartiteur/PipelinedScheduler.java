@@ -0,0 +1,198 @@
+package repartiteur;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shared.ServerInterface;
+
+/**
+ * Ordonnanceur en pipeline.
+ * 
+ * Chaque serveur dispose d'un nombre de cases (lots en cours de calcul), fixe
+ * ou pondere par l'executeur.
+ * Des qu'un resultat arrive, la case est remplie avec le prochain lot de la
+ * file de travail, sans attendre les autres serveurs. La reduction "% 4000"
+ * est faite au fur et a mesure de l'arrivee des resultats.
+ */
+public class PipelinedScheduler {
+
+	private static final long WAIT_TIMEOUT_MS = 50;
+
+	/**
+	 * Strategie de calcul d'un lot sur un serveur (mode securise ou non).
+	 */
+	public interface BatchExecutor {
+
+		/**
+		 * Nombre maximal d'operations a envoyer au serveur dans un lot.
+		 */
+		int getBatchSize(ServerInterface server);
+
+		/**
+		 * Calcule le lot de facon asynchrone. Le futur est complete avec le
+		 * resultat du lot, ou 0 si le lot a ete remis dans la file de travail.
+		 */
+		CompletableFuture<Integer> execute(ServerInterface server, Chunk batch);
+
+		/**
+		 * Nombre de lots en cours de calcul pour le serveur (la profondeur du pipeline par defaut).
+		 */
+		default int getDepth(ServerInterface server, int depth) {
+			return depth;
+		}
+
+		/**
+		 * Appele si le futur d'un lot se termine par une exception. Le lot a deja ete
+		 * remis dans la file par l'ordonnanceur; l'executeur peut retirer le serveur.
+		 */
+		default void onFailure(ServerInterface server, Throwable e) {
+		}
+
+	}
+
+	private final BatchQueue workQueue;
+	private final Collection<ServerInterface> servers;
+	private final int depth;
+	private final BatchExecutor executor;
+
+	private final Map<ServerInterface, AtomicInteger> activeSlots = new ConcurrentHashMap<>();
+	private final AtomicInteger result = new AtomicInteger();
+
+	// Lots dont le resultat n'a pas encore ete combine, et signal de leur fin.
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final Object drained = new Object();
+
+	/**
+	 * @param servers vue vivante des serveurs disponibles (les serveurs retires ne recoivent plus de lots).
+	 * @param depth nombre de lots en cours de calcul par serveur.
+	 */
+	public PipelinedScheduler(BatchQueue workQueue, Collection<ServerInterface> servers, int depth, BatchExecutor executor) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("La profondeur du pipeline doit etre positive.");
+		}
+
+		this.workQueue = workQueue;
+		this.servers = servers;
+		this.depth = depth;
+		this.executor = executor;
+	}
+
+	/**
+	 * Repartit le travail jusqu'a ce que toutes les operations soient confirmees.
+	 * Retourne faux si plus aucun serveur n'est disponible.
+	 */
+	public boolean run() throws InterruptedException {
+		while (!workQueue.isDone() || inFlight.get() > 0) {
+			if (workQueue.isDone()) {
+				// Toutes les operations sont confirmees: attendre la combinaison des derniers resultats.
+				awaitDrained();
+				continue;
+			}
+
+			if (servers.isEmpty()) {
+				return false;
+			}
+
+			// Relancer les cases inactives (nouvelles tranches lues ou tranches remises dans la file).
+			for (ServerInterface server : servers) {
+				fillSlots(server);
+			}
+
+			workQueue.awaitChange(WAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+		}
+
+		return true;
+	}
+
+	public int getResult() {
+		return result.get();
+	}
+
+	/**
+	 * Remet dans la file un lot deja combine dont le resultat (batchResult) s'est revele faux, et retire
+	 * ce resultat du resultat global. A appeler pendant le calcul d'un lot: l'ordonnanceur ne s'arrete
+	 * alors pas avant que le lot remis soit calcule a nouveau. Retourne faux si sa tache est terminee.
+	 */
+	public boolean reopen(Chunk batch, int batchResult) {
+		if (!workQueue.reopen(batch, batchResult)) {
+			return false;
+		}
+		result.accumulateAndGet(batchResult, (total, value) -> Math.floorMod(total - value, 4000));
+		return true;
+	}
+
+	/**
+	 * Nombre de lots en cours de calcul.
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	private void awaitDrained() throws InterruptedException {
+		synchronized (drained) {
+			while (inFlight.get() > 0) {
+				drained.wait();
+			}
+		}
+	}
+
+	private void fillSlots(ServerInterface server) {
+		AtomicInteger active = activeSlots.computeIfAbsent(server, key -> new AtomicInteger());
+
+		while (true) {
+			int nbActive = active.get();
+			if (nbActive >= executor.getDepth(server, depth)) {
+				return;
+			}
+
+			if (active.compareAndSet(nbActive, nbActive + 1) && !runSlot(server)) {
+				active.decrementAndGet();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Envoie le prochain lot dans une case deja reservee. Retourne faux si aucun lot n'a ete envoye.
+	 */
+	private boolean runSlot(ServerInterface server) {
+		if (!servers.contains(server)) {
+			return false;
+		}
+
+		Chunk batch = workQueue.claim(executor.getBatchSize(server));
+		if (batch == null) {
+			return false;
+		}
+
+		inFlight.incrementAndGet();
+		executor.execute(server, batch).whenComplete((subResult, e) -> {
+			if (e != null) {
+				// Echec imprevu: le lot n'a ete ni confirme ni remis dans la file par l'executeur.
+				workQueue.requeue(batch);
+				executor.onFailure(server, e);
+			} else if (subResult != null) {
+				result.accumulateAndGet(subResult, (total, value) -> (total + value) % 4000);
+			}
+			workQueue.onResult(batch, subResult != null ? subResult : 0);
+			if (inFlight.decrementAndGet() == 0) {
+				synchronized (drained) {
+					drained.notifyAll();
+				}
+			}
+
+			// Remplir la case du serveur des l'arrivee du resultat, sauf si sa profondeur a diminue entre-temps.
+			AtomicInteger active = activeSlots.get(server);
+			if (active.get() > executor.getDepth(server, depth) || !runSlot(server)) {
+				active.decrementAndGet();
+			}
+		});
+
+		return true;
+	}
+
+}
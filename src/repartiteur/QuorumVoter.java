@@ -0,0 +1,136 @@
+package repartiteur;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import shared.ServerInterface;
+
+/**
+ * Vote concurrent entre repliques pour le mode non-securise.
+ * 
+ * Un lot est envoye en meme temps a plusieurs serveurs (replicas). Le vote se
+ * termine des que quorum serveurs s'accordent sur un meme resultat: les
+ * repliques restantes sont annulees si elles n'ont pas encore demarre, ou leur
+ * reponse est ignoree. Si les reponses recues ne permettent plus d'atteindre
+ * le quorum, le lot est envoye aux serveurs candidats suivants.
+ */
+public class QuorumVoter {
+
+	private final int quorum;
+	private final int replicas;
+	private final ExecutorService executorService;
+
+	public QuorumVoter(int quorum, int replicas, ExecutorService executorService) {
+		if (quorum < 1 || replicas < quorum) {
+			throw new IllegalArgumentException("Le quorum doit etre entre 1 et le nombre de repliques.");
+		}
+
+		this.quorum = quorum;
+		this.replicas = replicas;
+		this.executorService = executorService;
+	}
+
+	public int getQuorum() {
+		return quorum;
+	}
+
+	public int getReplicas() {
+		return replicas;
+	}
+
+	/**
+	 * Lance le vote sur les serveurs candidats, dans l'ordre.
+	 * 
+	 * @param replica calcule le lot sur un serveur et retourne son resultat, ou null en cas d'echec.
+	 * @return un futur complete avec le resultat accepte par le quorum. Si le quorum ne peut pas etre
+	 *         atteint, le resultat ayant le plus de votes (le premier recu en cas d'egalite), ou null si
+	 *         aucun serveur n'a repondu.
+	 */
+	public CompletableFuture<Integer> vote(List<ServerInterface> candidates, Function<ServerInterface, Integer> replica) {
+		Vote vote = new Vote(candidates, replica);
+		vote.launch(Math.min(replicas, candidates.size()));
+		return vote.result;
+	}
+
+	private class Vote {
+
+		private final List<ServerInterface> candidates;
+		private final Function<ServerInterface, Integer> replica;
+		private final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+		private final Map<Integer, Integer> votes = new HashMap<>();
+		private final List<Future<?>> tasks = new ArrayList<>();
+		private Integer bestResult = null;
+		private int bestVotes = 0;
+		private int launched = 0;
+		private int responded = 0;
+		private boolean decided = false;
+
+		Vote(List<ServerInterface> candidates, Function<ServerInterface, Integer> replica) {
+			this.candidates = candidates;
+			this.replica = replica;
+		}
+
+		synchronized void launch(int count) {
+			for (int i = 0; i < count && launched < candidates.size(); i++) {
+				ServerInterface server = candidates.get(launched++);
+				tasks.add(executorService.submit(() -> onReply(replica.apply(server))));
+			}
+
+			if (launched == responded) {
+				// Aucune replique n'a pu etre lancee.
+				decide(bestResult);
+			}
+		}
+
+		private synchronized void onReply(Integer value) {
+			if (decided) {
+				return;
+			}
+
+			responded++;
+
+			if (value != null) {
+				int count = votes.merge(value, 1, Integer::sum);
+				if (count > bestVotes) {
+					bestVotes = count;
+					bestResult = value;
+				}
+
+				if (count >= quorum) {
+					decide(value);
+					return;
+				}
+			}
+
+			// Lancer d'autres repliques si celles en cours ne suffisent plus pour atteindre le quorum.
+			int outstanding = launched - responded;
+			int needed = quorum - bestVotes - outstanding;
+			if (needed > 0 && launched < candidates.size()) {
+				launch(needed);
+			} else if (outstanding == 0) {
+				decide(bestResult);
+			}
+		}
+
+		private void decide(Integer value) {
+			if (decided) {
+				return;
+			}
+
+			decided = true;
+			for (Future<?> task : tasks) {
+				task.cancel(false);
+			}
+			result.complete(value);
+		}
+
+	}
+
+}
@@ -4,57 +4,125 @@ import java.io.*;
 import java.rmi.*;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import shared.*;
 
 public class Repartiteur {
 
-	private static final int PORT = 5000;
+	private static final int SERVICE_PORT = 5000;
 	private final String username = "username";
 	private final String password = "password";
 	private static final String INPUT_DIRECTORY = "inputs/";
+	private static final String STDIN = "-";
+	private static final String DAEMON = "-daemon";
+	// Entrée continue: délai avant d'envoyer un micro-lot partiel et borne des opérations en mémoire.
+	private static final long STREAM_FLUSH_MS = 20;
+	private static final long STREAM_MAX_PENDING_OPERATIONS = 64L * OperationReader.DEFAULT_CHUNK_SIZE;
+	private static final long DEFAULT_REPORT_INTERVAL_MS = 1000;
+	private static final long HEDGE_RETRY_MS = 50;
 
 	private static String serviceIP = "";
 	private static boolean secureMode = false;
-	private static List<String> operations = new ArrayList<>();
+	private static boolean adaptiveBatchSize = false;
+	private static int pipelineDepth = 2;
+	private static int quorum = 0;
+	private static int replicas = 0;
+	private static boolean deduplicate = false;
+	private static double minSpotCheckRate = -1;
+	private static boolean nioTransport = false;
+	private static File metricsFile = null;
+	private static File operationsFile;
+	private static boolean readFromStdin = false;
+	private static boolean followInput = false;
+	private static long reportIntervalMillis = 0;
+	private static boolean daemonMode = false;
+	private static boolean submitToDaemon = false;
+	private static int jobWeight = 1;
+	private static long jobDeadlineMillis = 0;
+	private static boolean costAware = false;
+	private static boolean calibrateCosts = false;
+	private static File journalFile = null;
+	private static int verificationBlocks = 0;
+	private static double hedgePercentile = 0;
+	private static double hedgeBudget = 0;
+	private static boolean loadAware = false;
 
 	private ServiceInterface serviceStub;
-	private Map<ServerInterface, ServerConfig> servers = new HashMap<>();
+	private Map<ServerInterface, ServerConfig> servers = new ConcurrentHashMap<>();
+	private CostModel costModel = costAware ? new CostModel(calibrateCosts) : null;
+	// File des opérations lues (mode normal) ou file partagée par les tâches de tous les clients (mode démon).
+	private WorkQueue inputQueue = daemonMode ? null : new WorkQueue(costModel);
+	private FairJobQueue jobQueue = daemonMode ? new FairJobQueue(costModel) : null;
+	private BatchQueue workQueue = daemonMode ? jobQueue : inputQueue;
+	private BatchSizeController batchSizeController = new BatchSizeController(adaptiveBatchSize);
+	private QuorumVoter quorumVoter = null;
+	private ReputationTracker reputationTracker = null;
+	private HedgePolicy hedgePolicy = null;
+	private LoadTracker loadTracker = loadAware ? new LoadTracker() : null;
 	private ExecutorService executorService = Executors.newFixedThreadPool(5000);
+	private ScheduledExecutorService membershipPoller = Executors.newSingleThreadScheduledExecutor();
+	private ScheduledExecutorService progressReporter = Executors.newSingleThreadScheduledExecutor();
+	private ScheduledExecutorService hedgeTimer = Executors.newSingleThreadScheduledExecutor();
+	private long membershipVersion = -1;
+	// Serveurs actifs selon le service des noms (accès sous le verrou de updateServers) et serveurs mis en
+	// quarantaine, qui ne sont jamais réintégrés.
+	private Set<ServerConfig> activeConfigs = new HashSet<>();
+	private Set<ServerConfig> quarantinedConfigs = ConcurrentHashMap.newKeySet();
+	private DispatcherMetrics metrics = new DispatcherMetrics(workQueue, servers.keySet());
+	private Map<ServerInterface, ServerStats> serverStats = new ConcurrentHashMap<>();
+	private MetricsReporter metricsReporter = null;
+	private ResultJournal journal = null;
+	private PipelinedScheduler scheduler = null;
 
 	public static void main(String[] args) {
-		if (args.length > 0) {
-			String operationsFileName = args[0];
-			File operationsFile = new File(INPUT_DIRECTORY + operationsFileName);
+		if (args.length > 0 && args[0].equals(DAEMON)) {
+			daemonMode = true;
+
+			if (args.length > 1) {
+				serviceIP = args[1];
+
+				if (!readOptions(args, 2)) {
+					return;
+				}
 
-			if (operationsFile.exists()) {
-				readOperations(operationsFile);
+				Repartiteur repartiteur = new Repartiteur();
+				repartiteur.runDaemon();
+			} else {
+				System.out.println("Erreur: Aucune adresse IP pour le service des noms.");
+			}
+		} else if (args.length > 0) {
+			String operationsFileName = args[0];
+			operationsFile = new File(INPUT_DIRECTORY + operationsFileName);
+			readFromStdin = operationsFileName.equals(STDIN);
 
+			if (readFromStdin || operationsFile.exists()) {
 				if (args.length > 1) {
 					serviceIP = args[1];
 
-					if (args.length > 2) {
-						String secureModeArg = args[2];
-	
-						if (secureModeArg.equals("-s")) {
-							secureMode = true;
-						} else {
-							System.out.println("Erreur: Argument pas reconnu.");
-						}
-	
-						if (args.length > 3) {
-							System.out.println("Erreur: Trop d'arguments.");
-						}
+					if (!readOptions(args, 2)) {
+						return;
 					}
 				} else {
 					System.out.println("Erreur: Aucune adresse IP pour le service des noms.");
 				}
 
+				if (submitToDaemon) {
+					// L'adresse IP est celle du démon: il répartit la tâche sur ses propres serveurs.
+					submitJob(serviceIP);
+					return;
+				}
+
 				Repartiteur repartiteur = new Repartiteur();
 				repartiteur.run();
 			} else {
@@ -65,6 +133,213 @@ public class Repartiteur {
 		}
 	}
 
+	/**
+	 * Lit les options facultatives qui suivent les arguments positionnels.
+	 * 
+	 *   -s : mode sécurisé.
+	 *   -a : taille des lots adaptative pour chaque serveur (AIMD).
+	 *   -d [profondeur] : nombre de lots en cours de calcul par serveur (2 par défaut).
+	 *   -q [accord]/[répliques] : mode non-sécurisé par vote concurrent (ex. 2/3).
+	 *   -r [taux] : mode non-sécurisé par réputation, avec un taux minimal de vérification.
+	 *   -u : dédoublonner les opérations avant la répartition.
+	 *   -t [rmi|nio] : transport vers les serveurs (Java RMI par défaut).
+	 *   -m [fichier] : copier les mesures (aussi publiées par JMX) dans un fichier chaque seconde.
+	 *   -f : suivre le fichier d'opérations à mesure qu'il grandit (comme "tail -f").
+	 *   -i [ms] : afficher le résultat courant et le débit à cet intervalle (1000 ms par défaut pour une entrée continue).
+	 *   -j : soumettre le fichier comme tâche au répartiteur démon dont l'adresse IP remplace celle du service.
+	 *   -w [poids] : poids de la tâche soumise (1 par défaut).
+	 *   -e [ms] : échéance de la tâche soumise; elle passe alors avant les tâches sans échéance.
+	 *   -k [reference|mesure] : lots de travail estimé égal, les plus coûteux d'abord (modèle de référence ou calibré).
+	 *   -journal [fichier] : journaliser les résultats confirmés et reprendre la tâche là où elle s'est arrêtée.
+	 *   -v [blocs] : mode non-sécurisé par blocs: seuls les blocs sur lesquels deux serveurs diffèrent sont recalculés.
+	 *   -h [centile]/[budget] : en mode sécurisé, relancer sur un serveur inactif les lots plus lents que ce centile
+	 *                           des latences récentes, pour au plus [budget] % des lots (ex. 95/5).
+	 *   -l : pondérer le nombre de lots en cours de chaque serveur par la charge qu'il publie au service des noms.
+	 */
+	private static boolean readOptions(String[] args, int start) {
+		for (int i = start; i < args.length; i++) {
+			switch (args[i]) {
+				case "-s":
+					secureMode = true;
+					break;
+				case "-a":
+					adaptiveBatchSize = true;
+					break;
+				case "-u":
+					deduplicate = true;
+					break;
+				case "-d":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucune profondeur de pipeline.");
+						return false;
+					}
+					pipelineDepth = Integer.valueOf(args[++i]);
+					if (pipelineDepth < 1) {
+						System.out.println("Erreur: La profondeur de pipeline doit etre positive.");
+						return false;
+					}
+					break;
+				case "-q":
+					if (i + 1 >= args.length || !args[i + 1].matches("\\d+/\\d+")) {
+						System.out.println("Erreur: Le vote doit etre de la forme [accord]/[répliques].");
+						return false;
+					}
+					String[] vote = args[++i].split("/");
+					quorum = Integer.valueOf(vote[0]);
+					replicas = Integer.valueOf(vote[1]);
+					if (quorum < 1 || replicas < quorum) {
+						System.out.println("Erreur: L'accord doit etre entre 1 et le nombre de répliques.");
+						return false;
+					}
+					break;
+				case "-r":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun taux minimal de vérification.");
+						return false;
+					}
+					minSpotCheckRate = Double.valueOf(args[++i]);
+					if (minSpotCheckRate < 0 || minSpotCheckRate > 1) {
+						System.out.println("Erreur: Le taux minimal de vérification doit etre entre 0 et 1.");
+						return false;
+					}
+					break;
+				case "-t":
+					if (i + 1 >= args.length || !args[i + 1].matches("rmi|nio")) {
+						System.out.println("Erreur: Le transport doit etre rmi ou nio.");
+						return false;
+					}
+					nioTransport = args[++i].equals("nio");
+					break;
+				case "-m":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun fichier de mesures.");
+						return false;
+					}
+					metricsFile = new File(args[++i]);
+					break;
+				case "-f":
+					followInput = true;
+					break;
+				case "-l":
+					loadAware = true;
+					break;
+				case "-i":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun intervalle d'affichage.");
+						return false;
+					}
+					reportIntervalMillis = Long.valueOf(args[++i]);
+					if (reportIntervalMillis < 1) {
+						System.out.println("Erreur: L'intervalle d'affichage doit etre positif.");
+						return false;
+					}
+					break;
+				case "-j":
+					submitToDaemon = true;
+					break;
+				case "-journal":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun fichier de journal.");
+						return false;
+					}
+					journalFile = new File(args[++i]);
+					break;
+				case "-v":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun nombre de blocs.");
+						return false;
+					}
+					verificationBlocks = Integer.valueOf(args[++i]);
+					if (verificationBlocks < 1) {
+						System.out.println("Erreur: Le nombre de blocs doit etre positif.");
+						return false;
+					}
+					break;
+				case "-h":
+					if (i + 1 >= args.length || !args[i + 1].matches("\\d+(\\.\\d+)?/\\d+(\\.\\d+)?")) {
+						System.out.println("Erreur: La relance doit etre de la forme [centile]/[budget].");
+						return false;
+					}
+					String[] hedge = args[++i].split("/");
+					hedgePercentile = Double.valueOf(hedge[0]);
+					hedgeBudget = Double.valueOf(hedge[1]);
+					if (hedgePercentile <= 0 || hedgePercentile >= 100 || hedgeBudget <= 0 || hedgeBudget > 100) {
+						System.out.println("Erreur: Le centile doit etre entre 0 et 100 et le budget entre 0 et 100 %.");
+						return false;
+					}
+					break;
+				case "-k":
+					if (i + 1 >= args.length || !args[i + 1].matches("reference|mesure")) {
+						System.out.println("Erreur: Le modèle de coût doit etre reference ou mesure.");
+						return false;
+					}
+					costAware = true;
+					calibrateCosts = args[++i].equals("mesure");
+					break;
+				case "-w":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun poids de tâche.");
+						return false;
+					}
+					jobWeight = Integer.valueOf(args[++i]);
+					if (jobWeight < 1) {
+						System.out.println("Erreur: Le poids d'une tâche doit etre positif.");
+						return false;
+					}
+					break;
+				case "-e":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucune échéance de tâche.");
+						return false;
+					}
+					jobDeadlineMillis = Long.valueOf(args[++i]);
+					if (jobDeadlineMillis < 1) {
+						System.out.println("Erreur: L'échéance d'une tâche doit etre positive.");
+						return false;
+					}
+					break;
+				default:
+					System.out.println("Erreur: Argument pas reconnu: " + args[i]);
+					return false;
+			}
+		}
+		if (journalFile != null && (daemonMode || submitToDaemon || isStreaming() || deduplicate || costAware)) {
+			// Le journal identifie les opérations par leur rang dans le fichier lu tel quel.
+			System.out.println("Erreur: L'option -journal demande un fichier d'opérations lu sans -u, -k, -f ni -j.");
+			return false;
+		}
+		if (daemonMode && submitToDaemon) {
+			System.out.println("Erreur: L'option -j n'est pas compatible avec le mode démon.");
+			return false;
+		}
+		if (!submitToDaemon && (jobWeight != 1 || jobDeadlineMillis != 0)) {
+			System.out.println("Erreur: Les options -w et -e demandent l'option -j.");
+			return false;
+		}
+		if (hedgePercentile > 0 && !secureMode) {
+			System.out.println("Erreur: L'option -h demande le mode sécurisé (-s).");
+			return false;
+		}
+		if (verificationBlocks > 0 && (secureMode || quorum > 0 || minSpotCheckRate >= 0 || nioTransport)) {
+			System.out.println("Erreur: L'option -v n'est pas compatible avec -s, -q, -r ni le transport nio.");
+			return false;
+		}
+		if (quorum > 0 && minSpotCheckRate >= 0) {
+			System.out.println("Erreur: Les options -q et -r ne peuvent pas etre combinées.");
+			return false;
+		}
+		if (isStreaming()) {
+			if (deduplicate) {
+				System.out.println("Erreur: L'option -u n'est pas compatible avec une entrée continue.");
+				return false;
+			}
+			if (reportIntervalMillis == 0) {
+				reportIntervalMillis = DEFAULT_REPORT_INTERVAL_MS;
+			}
+		}
+		return true;
+	}
+
 	public Repartiteur() {
 		super();
 
@@ -73,124 +348,304 @@ public class Repartiteur {
 		}
 
 		this.serviceStub = this.loadServiceStub(serviceIP);
+
+		if (quorum > 0) {
+			this.quorumVoter = new QuorumVoter(quorum, replicas, executorService);
+		}
+
+		if (minSpotCheckRate >= 0) {
+			// Les lots non vérifiés retenus par serveur sont bornés comme les opérations en attente d'une entrée sans fin.
+			this.reputationTracker = new ReputationTracker(minSpotCheckRate, STREAM_MAX_PENDING_OPERATIONS);
+		}
+
+		if (hedgePercentile > 0) {
+			this.hedgePolicy = new HedgePolicy(hedgePercentile / 100, hedgeBudget / 100);
+		}
 	}
 
 	private void run() {
 		try {
 			long START = System.nanoTime();
 
-			// Authentifier le répartiteur auprès du service des noms
-			this.serviceStub.signUpRepartiteur(this.username, this.password);
+			if (journalFile != null) {
+				// Reprendre la tâche: les plages déjà confirmées ne sont pas réparties à nouveau.
+				try {
+					this.journal = ResultJournal.open(journalFile, operationsFile);
+					this.inputQueue.setJournal(this.journal);
+					if (this.journal.getRecoveredOperations() > 0) {
+						System.out.println("Reprise : " + this.journal.getRecoveredOperations() + " opérations récupérées du journal.");
+					}
+				} catch (IOException e) {
+					System.out.println("Erreur: " + e.getMessage());
+					return;
+				}
+			}
 
-			// Récupérer les configurations des serveurs actifs
-			List<ServerConfig> serversConfigs = this.serviceStub.getServers();
+			// Lire les opérations en arrière-plan: la répartition commence dès la première tranche lue.
+			startReadingOperations();
 
-			// Loader les stubs des serveurs
-			for (ServerConfig serverConfig : serversConfigs) {
-				ServerInterface serverStub = this.loadServerStub(serverConfig.getServerHostname());
+			PipelinedScheduler scheduler = this.startDispatching();
 
-				// Authentifier avec chacun des nouveaux stubs
-				if (serverStub.authenticate(this.username, this.password)) {
-					this.servers.put(serverStub, serverConfig);
-				}
+			if (reportIntervalMillis > 0) {
+				this.startProgressReport(scheduler);
 			}
 
-			int result = 0;
+			// La méthode run() retourne faux si tous les serveurs tombent en panne.
+			if (!scheduler.run()) {
+				System.out.println("Erreur: Aucun serveur est disponible.");
+				this.shutdown();
+				return;
+			}
 
-			// MODE SÉCURISÉ
-			// Le résultat des serveurs de calcul est considéré bon et valide.
-			// Le répartiteur n'a donc besoin que d'une seule réponse de la part d'un serveur.
-			if (secureMode) {
-				List<CompletableFuture<Integer>> futureSubResults = new ArrayList<>();
+			this.shutdown();
+			int result = this.getResult(scheduler);
 
-				while (!operations.isEmpty()) {
-					// Envoyer concurremment les tâches à chaque serveur
-					boolean isDivisible = this.divideAndSendSubOperationsSecure(futureSubResults);
+			long END = System.nanoTime();
+			System.out.println("Résultat final : " + result);
+			System.out.println("Temps d'exécution : " + (END - START));
+		}
+		catch (RemoteException e) {
+			System.out.println("Erreur: " + e.getMessage());
+		}
+		catch (InterruptedException e) {
+			System.out.println("Erreur: " + e.getMessage());
+			this.shutdown();
+		}
+	}
 
-					// La méthode divideAndSendSubOperationsSecure(...) retourne faux si tous les serveurs
-					// tombent en panne.
-					if (!isDivisible) {
-						System.out.println("Erreur: Aucun serveur est disponible.");
-						executorService.shutdown();
-						return;
-					}
-	
-					// Attendre la complétion de chaque tâche (avec l'appel "get" bloquant)
-					for (CompletableFuture<Integer> futureSubResult : futureSubResults) {
-						try {
-							futureSubResult.get();
-						} catch (InterruptedException | ExecutionException e) {
-							System.out.println("Erreur: " + e.getMessage());
-						}
-					}
-				}
+	/**
+	 * Mode démon: accepter les tâches de plusieurs clients et les répartir sur un même ensemble
+	 * de serveurs authentifiés, sans jamais s'arrêter. Chaque tâche obtient son propre résultat.
+	 */
+	private void runDaemon() {
+		try {
+			PipelinedScheduler scheduler = this.startDispatching();
 
-				// Combiner les résultats de chaque tâche
-				for (CompletableFuture<Integer> futureSubResult : futureSubResults) {
-					try {
-						int subResult = futureSubResult.get();
-						result += subResult;
-						result %= 4000;
-					} catch (InterruptedException | ExecutionException e) {
-						System.out.println("Erreur: " + e.getMessage());
-					}
+			DispatcherDaemon daemon = new DispatcherDaemon(this.jobQueue, STREAM_MAX_PENDING_OPERATIONS);
+			DispatcherInterface stub = (DispatcherInterface) UnicastRemoteObject.exportObject(daemon, DispatcherInterface.PORT);
+			Registry registry = LocateRegistry.createRegistry(DispatcherInterface.PORT);
+			registry.rebind(DispatcherInterface.REGISTRY_NAME, stub);
+			System.out.println("Répartiteur prêt à recevoir des tâches.");
+
+			if (reportIntervalMillis > 0) {
+				this.startProgressReport(scheduler);
+			}
+
+			// La file du démon ne se termine jamais: run() ne retourne que si tous les serveurs tombent en panne.
+			// Les lots en cours ont alors été remis dans leur file; la répartition reprend au retour d'un serveur.
+			while (!scheduler.run()) {
+				System.out.println("Erreur: Aucun serveur est disponible.");
+				this.awaitServers();
+			}
+		}
+		catch (RemoteException e) {
+			System.out.println("Erreur: " + e.getMessage());
+			this.shutdown();
+		}
+		catch (InterruptedException e) {
+			System.out.println("Erreur: " + e.getMessage());
+			this.shutdown();
+		}
+	}
+
+	/**
+	 * Publie les mesures, s'authentifie auprès du service des noms, charge les serveurs
+	 * et retourne l'ordonnanceur prêt à répartir le contenu de la file de travail.
+	 */
+	private PipelinedScheduler startDispatching() throws RemoteException, InterruptedException {
+		// Publier les mesures par JMX et, au besoin, les copier périodiquement dans un fichier.
+		MetricsReporter.register(metrics, "repartiteur:type=Dispatcher");
+		if (metricsFile != null) {
+			try {
+				metricsReporter = new MetricsReporter(metricsFile, "repartiteur:*");
+				metricsReporter.start();
+			} catch (IOException e) {
+				System.out.println("Erreur: " + e.getMessage());
+			}
+		}
+
+		// Authentifier le répartiteur auprès du service des noms
+		this.serviceStub.signUpRepartiteur(this.username, this.password);
+
+		// Récupérer les configurations des serveurs actifs et loader leurs stubs
+		this.updateServers();
+
+		// Suivre les changements de la liste des serveurs pendant la tâche: les nouveaux serveurs
+		// reçoivent du travail et les serveurs morts sont retirés avant de leur envoyer un lot.
+		membershipPoller.scheduleWithFixedDelay(() -> {
+			try {
+				this.updateServers();
+				if (loadTracker != null) {
+					loadTracker.update(this.serviceStub.getServerLoads());
 				}
-	
-				executorService.shutdown();
-			} else {
-				// MODE NON-SÉCURISÉE
-				// Le système ne fait pas confiance aux serveurs de calcul.
-				// Le répartiteur considère alors une réponse comme étant valide que si
-				// deux serveurs de calcul sont d'accord sur la même réponse à un même travail.
+			} catch (RemoteException e) {
+				System.out.println("Erreur: " + e.getMessage());
+			}
+		}, ServiceInterface.HEARTBEAT_INTERVAL_MS, ServiceInterface.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
-				List<CompletableFuture<Integer>> futureSubResults = new ArrayList<>();
-	
-				while (!operations.isEmpty()) {
-					// Une tâche peut être envoyée à plusieurs serveurs. Le nombre limite d'opérations correspond donc
-					// à la capacité la plus faible trouvée parmi les serveurs.
-					Collections.sort(serversConfigs, Comparator.comparingInt(ServerConfig ::getOperationCapacity).reversed());
-					int maxOperations = serversConfigs.get(serversConfigs.size() - 1).getOperationCapacity();
-
-					// Envoyer concurremment les tâches à chaque serveur
-					boolean isDivisible = this.divideAndSendSubOperationsNonSecure(futureSubResults, maxOperations);
-
-					// La méthode divideAndSendSubOperationsNonSecure(...) retourne faux si tous les serveurs
-					// tombent en panne.
-					if (!isDivisible) {
-						System.out.println("Erreur: Aucun serveur est disponible.");
-						executorService.shutdown();
-						return;
-					}
+		if (daemonMode) {
+			// Un démon peut démarrer avant les serveurs: attendre le premier pour connaître leur capacité.
+			this.awaitServers();
+		}
+		List<ServerConfig> serversConfigs = new ArrayList<>(this.servers.values());
 
-					// Attendre la complétion de chaque tâche (avec l'appel "get" bloquant)
-					for (CompletableFuture<Integer> futureSubResult : futureSubResults) {
-						try {
-							futureSubResult.get();
-						} catch (InterruptedException | ExecutionException e) {
-							System.out.println("Erreur: " + e.getMessage());
-						}
-					}
+		// MODE SÉCURISÉ
+		// Le résultat des serveurs de calcul est considéré bon et valide.
+		// Le répartiteur n'a donc besoin que d'une seule réponse de la part d'un serveur.
+		PipelinedScheduler.BatchExecutor batchExecutor = new SecureBatchExecutor();
+
+		if (!secureMode) {
+			// MODE NON-SÉCURISÉE
+			// Le système ne fait pas confiance aux serveurs de calcul.
+			// Le répartiteur considère alors une réponse comme étant valide que si
+			// deux serveurs de calcul sont d'accord sur la même réponse à un même travail.
+
+			// Une tâche peut être envoyée à plusieurs serveurs. Sans taille adaptative, le nombre limite
+			// d'opérations correspond donc à la capacité la plus faible trouvée parmi les serveurs.
+			int maxOperations = serversConfigs.stream().mapToInt(ServerConfig::getOperationCapacity).min().orElse(1);
+			batchExecutor = new NonSecureBatchExecutor(maxOperations);
+		}
+
+		// Chaque serveur reçoit son prochain lot dès qu'il répond; le résultat est combiné au fur et à mesure.
+		PipelinedScheduler scheduler = new PipelinedScheduler(this.workQueue, this.servers.keySet(), pipelineDepth, batchExecutor);
+		metrics.setScheduler(scheduler);
+		this.scheduler = scheduler;
+		return scheduler;
+	}
+
+	/**
+	 * Attend qu'au moins un serveur soit disponible (la liste est mise à jour par membershipPoller).
+	 */
+	private void awaitServers() throws InterruptedException {
+		while (this.servers.isEmpty()) {
+			Thread.sleep(ServiceInterface.HEARTBEAT_INTERVAL_MS);
+		}
+	}
+
+	/**
+	 * Soumet le fichier d'opérations comme tâche au répartiteur démon et affiche son résultat.
+	 */
+	private static void submitJob(String daemonIP) {
+		try {
+			long START = System.nanoTime();
+
+			Registry registry = LocateRegistry.getRegistry(daemonIP, DispatcherInterface.PORT);
+			DispatcherInterface dispatcher = (DispatcherInterface) registry.lookup(DispatcherInterface.REGISTRY_NAME);
+
+			long jobId = dispatcher.createJob(jobWeight, jobDeadlineMillis);
+
+			// Une entrée continue peut rester longtemps sans nouvelle opération: renouveler le bail de la tâche.
+			ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor();
+			leaseRenewer.scheduleAtFixedRate(() -> {
+				try {
+					dispatcher.renewJob(jobId);
+				} catch (RemoteException e) {
+					System.out.println("Erreur: " + e.getMessage());
 				}
+			}, ServiceInterface.HEARTBEAT_INTERVAL_MS, ServiceInterface.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
-				// Combiner les résultats de chaque tâche
-				for (CompletableFuture<Integer> futureSubResult : futureSubResults) {
+			try {
+				// Le démon bloque l'ajout tant que la tâche a trop d'opérations en attente.
+				readOperations(chunk -> {
 					try {
-						int subResult = futureSubResult.get();
-						result += subResult;
-						result %= 4000;
-					} catch (InterruptedException | ExecutionException e) {
-						System.out.println("Erreur: " + e.getMessage());
+						dispatcher.addOperations(jobId, chunk.getOpcodes(), chunk.getParameters(), chunk.getCounts());
+					} catch (RemoteException e) {
+						throw new UncheckedIOException(e);
 					}
-				}
-	
-				executorService.shutdown();
+				});
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			} finally {
+				leaseRenewer.shutdown();
+			}
+			dispatcher.closeJob(jobId);
+
+			Integer result;
+			while ((result = dispatcher.awaitResult(jobId, ServiceInterface.HEARTBEAT_INTERVAL_MS)) == null) {
+				// Le démon retourne périodiquement: la connexion ne reste pas bloquée indéfiniment.
 			}
 
 			long END = System.nanoTime();
 			System.out.println("Résultat final : " + result);
 			System.out.println("Temps d'exécution : " + (END - START));
+		} catch (NotBoundException e) {
+			System.out.println("Erreur: Le nom '" + e.getMessage() + "' n'est pas défini dans le registre.");
+		} catch (IOException e) {
+			System.out.println("Erreur: " + e.getMessage());
 		}
-		catch (RemoteException e) {
+	}
+
+	private void shutdown() {
+		executorService.shutdown();
+		membershipPoller.shutdown();
+		progressReporter.shutdown();
+		hedgeTimer.shutdown();
+		if (metricsReporter != null) {
+			metricsReporter.stop();
+		}
+		if (journal != null) {
+			journal.close();
+		}
+
+		for (ServerInterface serverStub : this.servers.keySet()) {
+			if (serverStub instanceof NioServerStub) {
+				((NioServerStub) serverStub).close();
+			}
+		}
+	}
+
+	/**
+	 * Appliquer les changements de la liste des serveurs depuis la dernière version connue.
+	 */
+	private synchronized void updateServers() throws RemoteException {
+		ServerChanges changes = this.serviceStub.getServerChanges(this.membershipVersion);
+
+		List<ServerConfig> removed = new ArrayList<>(changes.getRemoved());
+		if (changes.isReset()) {
+			// Liste complète: retirer les serveurs qui n'en font plus partie.
+			for (ServerConfig serverConfig : this.servers.values()) {
+				if (!changes.getAdded().contains(serverConfig)) {
+					removed.add(serverConfig);
+				}
+			}
+			this.activeConfigs.clear();
+		}
+
+		// Un serveur qui s'est inscrit à nouveau est à la fois retiré et ajouté: l'ancien stub est remplacé.
+		for (ServerConfig serverConfig : removed) {
+			this.activeConfigs.remove(serverConfig);
+			for (Map.Entry<ServerInterface, ServerConfig> server : this.servers.entrySet()) {
+				if (server.getValue().equals(serverConfig)) {
+					this.removeServer(server.getKey());
+				}
+			}
+		}
+		this.activeConfigs.addAll(changes.getAdded());
+
+		// Ajouter les nouveaux serveurs, et réintégrer les serveurs toujours actifs qui ont été retirés
+		// localement (p. ex. après une RemoteException passagère).
+		for (ServerConfig serverConfig : this.activeConfigs) {
+			if (!this.servers.containsValue(serverConfig) && !this.quarantinedConfigs.contains(serverConfig)) {
+				this.addServer(serverConfig);
+			}
+		}
+
+		this.membershipVersion = changes.getVersion();
+	}
+
+	private void addServer(ServerConfig serverConfig) {
+		ServerInterface serverStub = this.loadServerStub(serverConfig);
+
+		try {
+			// Authentifier avec chacun des nouveaux stubs
+			if (serverStub != null && serverStub.authenticate(this.username, this.password)) {
+				this.batchSizeController.register(serverStub, serverConfig.getOperationCapacity());
+				ServerStats stats = new ServerStats();
+				this.serverStats.put(serverStub, stats);
+				MetricsReporter.register(stats, "repartiteur:type=Server,name=" + MetricsReporter.quote(serverConfig.toString()));
+				this.servers.put(serverStub, serverConfig);
+			}
+		} catch (RemoteException e) {
 			System.out.println("Erreur: " + e.getMessage());
 		}
 	}
@@ -198,7 +653,7 @@ public class Repartiteur {
 	private ServiceInterface loadServiceStub(String hostname) {
 		ServiceInterface stub = null;
 		try {
-			Registry registry = LocateRegistry.getRegistry(hostname, PORT);
+			Registry registry = LocateRegistry.getRegistry(hostname, SERVICE_PORT);
 			stub = (ServiceInterface) registry.lookup("service");
 		} catch (NotBoundException e) {
 			System.out.println("Erreur: Le nom '" + e.getMessage() + "' n'est pas défini dans le registre.");
@@ -210,12 +665,22 @@ public class Repartiteur {
 		return stub;
 	}
 
-	private ServerInterface loadServerStub(String hostname) {
+	private ServerInterface loadServerStub(ServerConfig serverConfig) {
 		ServerInterface stub = null;
 
+		if (nioTransport) {
+			try {
+				return NioServerStub.connect(serverConfig.getServerHostname(), serverConfig.getPort());
+			} catch (IOException e) {
+				System.out.println("Erreur: " + e.getMessage());
+				return null;
+			}
+		}
+
 		try {
-			Registry registry = LocateRegistry.getRegistry(hostname, PORT);
-			stub = (ServerInterface) registry.lookup("server");
+			// Chaque instance a son propre port et son propre nom dans le registre.
+			Registry registry = LocateRegistry.getRegistry(serverConfig.getServerHostname(), serverConfig.getPort());
+			stub = (ServerInterface) registry.lookup(serverConfig.getRegistryName());
 		} catch (NotBoundException e) {
 			System.out.println("Erreur: Le nom '" + e.getMessage() + "' n'est pas défini dans le registre.");
 		} catch (AccessException e) {
@@ -227,57 +692,158 @@ public class Repartiteur {
 		return stub;
 	}
 
-	static private void readOperations(File operationsFile) {
-		try {
-			BufferedReader bufferedReader = new BufferedReader(new FileReader(operationsFile));
-	
-			String operation;
-			while ((operation = bufferedReader.readLine()) != null) {
-				operations.add(operation);
+	/**
+	 * Vrai si les opérations arrivent sans fin connue (entrée standard ou fichier suivi).
+	 */
+	private static boolean isStreaming() {
+		return readFromStdin || followInput;
+	}
+
+	/**
+	 * Résultat combiné des lots répartis et des plages récupérées du journal.
+	 */
+	private int getResult(PipelinedScheduler scheduler) {
+		return (journal != null) ? (scheduler.getResult() + journal.getRecoveredResult()) % 4000 : scheduler.getResult();
+	}
+
+	/**
+	 * Affiche périodiquement le résultat courant, le nombre d'opérations confirmées et le débit de l'intervalle.
+	 */
+	private void startProgressReport(PipelinedScheduler scheduler) {
+		long[] last = { 0, System.nanoTime() };
+
+		progressReporter.scheduleAtFixedRate(() -> {
+			long completed = workQueue.getCompletedOperations();
+			long now = System.nanoTime();
+			long rate = Math.round((completed - last[0]) / Math.max(1e-9, (now - last[1]) / 1e9));
+			last[0] = completed;
+			last[1] = now;
+
+			if (daemonMode) {
+				// Le démon n'a pas de résultat global: chaque tâche a le sien.
+				System.out.println("Tâches en cours : " + jobQueue.getJobCount() + " (" + completed + " opérations, " + rate + " op/s)");
+			} else {
+				System.out.println("Résultat courant : " + this.getResult(scheduler) + " (" + completed + " opérations, " + rate + " op/s)");
 			}
+		}, reportIntervalMillis, reportIntervalMillis, TimeUnit.MILLISECONDS);
+	}
 
-			bufferedReader.close();
-		} catch (IOException e) {
-			System.out.println("Erreur: " + e.getMessage());
+	/**
+	 * Lit les opérations du fichier (ou de l'entrée continue) et passe chaque tranche à consumer.
+	 */
+	private static void readOperations(Consumer<Chunk> consumer) throws IOException {
+		if (isStreaming()) {
+			// Entrée continue: micro-lots envoyés dès qu'ils sont lus.
+			InputStream input = readFromStdin ? System.in : OperationReader.follow(operationsFile);
+			OperationReader.readStream(input, OperationReader.DEFAULT_CHUNK_SIZE, STREAM_FLUSH_MS, consumer);
+		} else if (deduplicate || costAware) {
+			// Les opérations uniques, et les plus coûteuses, ne sont connues qu'à la fin de la lecture.
+			CostSorter sorter = costAware ? new CostSorter() : null;
+			Consumer<Chunk> read = (sorter != null) ? sorter : consumer;
+
+			if (deduplicate) {
+				Deduplicator deduplicator = new Deduplicator();
+				OperationReader.read(operationsFile, OperationReader.DEFAULT_CHUNK_SIZE, deduplicator);
+				deduplicator.emit(OperationReader.DEFAULT_CHUNK_SIZE, read);
+			} else {
+				OperationReader.read(operationsFile, OperationReader.DEFAULT_CHUNK_SIZE, read);
+			}
+
+			if (sorter != null) {
+				sorter.emit(OperationReader.DEFAULT_CHUNK_SIZE, consumer);
+			}
+		} else {
+			OperationReader.read(operationsFile, OperationReader.DEFAULT_CHUNK_SIZE, consumer);
 		}
 	}
 
-	private boolean divideAndSendSubOperationsSecure(List<CompletableFuture<Integer>> futureSubResults) {
-		while (!operations.isEmpty()) {
-			// Retourner faux s'il n'est pas possible de distribuer le calcul (c-.à-d. aucun serveur de disponible).
-			if (servers.isEmpty()) {
-				return false;
+	private void startReadingOperations() {
+		Thread reader = new Thread(() -> {
+			try {
+				if (isStreaming()) {
+					// Lecture freinée tant que les serveurs ne suivent pas.
+					readOperations(chunk -> {
+						try {
+							inputQueue.put(chunk, STREAM_MAX_PENDING_OPERATIONS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							inputQueue.add(chunk);
+						}
+					});
+				} else {
+					readOperations(journal != null ? journal.skipRecovered(inputQueue::add) : inputQueue::add);
+				}
+			} catch (IOException e) {
+				System.out.println("Erreur: " + e.getMessage());
+			} finally {
+				inputQueue.close();
 			}
+		});
+		reader.start();
+	}
 
-			for (Map.Entry<ServerInterface, ServerConfig> server : servers.entrySet()) {
-				ServerInterface serverStub = server.getKey();
-				ServerConfig serverConfig = server.getValue();
+	private class SecureBatchExecutor implements PipelinedScheduler.BatchExecutor {
 
-				// Transférer les opérations de la liste principale à la sub liste envoyée au serveur courant
-				List<String> subOperations = new ArrayList<String>();
-				int operationsSize = operations.size();
+		@Override
+		public int getBatchSize(ServerInterface server) {
+			return batchSizeController.getBatchSize(server);
+		}
 
-				for (int i = 0; i < serverConfig.getOperationCapacity() && i < operationsSize; i++) {
-					subOperations.add(operations.remove(0));
-				}
+		@Override
+		public CompletableFuture<Integer> execute(ServerInterface server, Chunk batch) {
+			return executeSubOperationsSecure(server, batch);
+		}
 
-				futureSubResults.add(executeSubOperationsSecure(serverStub, subOperations));
+		@Override
+		public int getDepth(ServerInterface server, int depth) {
+			return getWeightedDepth(server, depth);
+		}
 
-				if (operations.isEmpty()) {
-					break;
-				}
-			}
+		@Override
+		public void onFailure(ServerInterface server, Throwable e) {
+			handleBatchFailure(server, e);
 		}
 
-		return true;
 	}
 
-	private CompletableFuture<Integer> executeSubOperationsSecure(ServerInterface serverStub, List<String> subOperations) {
+	/**
+	 * Profondeur du pipeline du serveur, pondérée par sa charge publiée avec l'option -l.
+	 */
+	private int getWeightedDepth(ServerInterface server, int depth) {
+		return (loadTracker != null) ? loadTracker.getDepth(this.servers.get(server), depth) : depth;
+	}
+
+	private CompletableFuture<Integer> executeSubOperationsSecure(ServerInterface serverStub, Chunk subOperations) {
+		if (hedgePolicy != null) {
+			return this.executeSubOperationsHedged(serverStub, subOperations);
+		}
+
+		if (serverStub instanceof NioServerStub) {
+			// Transport NIO: le lot reste en cours sans bloquer de fil du répartiteur.
+			// La suite roule hors du fil de lecture de la connexion, qui reste libre pour les autres réponses.
+			return this.timedCalculateAsync((NioServerStub) serverStub, subOperations).handleAsync((subResult, e) -> {
+				if (e == null) {
+					workQueue.complete(subOperations);
+					return subResult;
+				}
+
+				Throwable cause = NioServerStub.unwrap(e);
+				if (cause instanceof ServerOverloadedException) {
+					this.handleServerOverloadedException((ServerOverloadedException) cause, subOperations);
+				} else {
+					this.handleRemoteException(new RemoteException(cause.getMessage(), cause), subOperations, serverStub);
+				}
+				return 0;
+			}, executorService);
+		}
+
 		CompletableFuture<Integer> futureSubResult = new CompletableFuture<>();
 
 		executorService.submit(() -> {
 			try {
-				futureSubResult.complete(serverStub.calculate(subOperations));
+				int subResult = this.timedCalculate(serverStub, subOperations);
+				workQueue.complete(subOperations);
+				futureSubResult.complete(subResult);
 			} catch (ServerOverloadedException e) {
 				// Exception envoyée lorsqu'un serveur est surchargé ou lorsqu'il y a un problème avec le remoting de Java RMI.
 				this.handleServerOverloadedException(e, subOperations);
@@ -286,52 +852,370 @@ public class Repartiteur {
 				// Exception envoyée lorsqu'un serveur de calcul est tué au beau milieu de l'exécution d'une tâche.
 				this.handleRemoteException(e, subOperations, serverStub);
 				futureSubResult.complete(0);
+			} catch (RuntimeException e) {
+				// Erreur imprévue: le lot est traité à nouveau, sans quoi le travail ne se terminerait jamais.
+				this.handleRemoteException(new RemoteException(e.getMessage(), e), subOperations, serverStub);
+				futureSubResult.complete(0);
 			}
 		});
 
 		return futureSubResult;
 	}
 
-	private boolean divideAndSendSubOperationsNonSecure(List<CompletableFuture<Integer>> futureSubResults, int maxOperations) {
-		while (!operations.isEmpty()) {
-			// Retourner faux s'il n'est pas possible de distribuer le calcul (c-.à-d. aucun serveur de disponible).
-			if (servers.isEmpty()) {
-				return false;
+	/**
+	 * Mode sécurisé avec relance: si le lot n'a pas de réponse avant le délai appris des latences récentes,
+	 * il est aussi envoyé à un serveur inactif et la première réponse est retenue. Le futur sert de verrou:
+	 * une fois complété, les autres réponses sont ignorées.
+	 */
+	private CompletableFuture<Integer> executeSubOperationsHedged(ServerInterface serverStub, Chunk subOperations) {
+		CompletableFuture<Integer> futureSubResult = new CompletableFuture<>();
+		// Serveurs sollicités et appels en cours: le lot n'est remis dans la file que si tous ont échoué.
+		List<ServerInterface> attempted = new ArrayList<>();
+		AtomicInteger pending = new AtomicInteger();
+
+		hedgePolicy.onBatch();
+		this.attemptHedged(serverStub, subOperations, futureSubResult, attempted, pending);
+		this.scheduleHedge(subOperations, futureSubResult, attempted, pending, System.nanoTime());
+
+		return futureSubResult;
+	}
+
+	/**
+	 * Planifie la relance du lot envoyé à sentNanos. Tant que le délai n'est pas connu (premiers lots),
+	 * il est réévalué régulièrement: un lot envoyé au début peut aussi être relancé.
+	 */
+	private void scheduleHedge(Chunk subOperations, CompletableFuture<Integer> futureSubResult,
+			List<ServerInterface> attempted, AtomicInteger pending, long sentNanos) {
+		if (futureSubResult.isDone() || hedgeTimer.isShutdown()) {
+			return;
+		}
+
+		long deadlineNanos = hedgePolicy.getDeadlineNanos(subOperations.size());
+		if (deadlineNanos < 0) {
+			hedgeTimer.schedule(() -> this.scheduleHedge(subOperations, futureSubResult, attempted, pending, sentNanos),
+					HEDGE_RETRY_MS, TimeUnit.MILLISECONDS);
+			return;
+		}
+
+		hedgeTimer.schedule(() -> this.hedge(subOperations, futureSubResult, attempted, pending),
+				Math.max(0, sentNanos + deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Relance le lot en retard sur un serveur inactif. Si aucun serveur n'est inactif ou que le budget
+	 * est épuisé, la relance est retentée plus tard, tant que le lot n'a pas de réponse.
+	 */
+	private void hedge(Chunk subOperations, CompletableFuture<Integer> futureSubResult,
+			List<ServerInterface> attempted, AtomicInteger pending) {
+		ServerInterface backup;
+		synchronized (futureSubResult) {
+			if (futureSubResult.isDone() || hedgeTimer.isShutdown()) {
+				return;
+			}
+			backup = hedgePolicy.pickIdle(this.servers.keySet(), attempted);
+			if (backup == null || !hedgePolicy.tryAcquire()) {
+				hedgeTimer.schedule(() -> this.hedge(subOperations, futureSubResult, attempted, pending),
+						HEDGE_RETRY_MS, TimeUnit.MILLISECONDS);
+				return;
 			}
+		}
 
-			List<String> subOperations = new ArrayList<String>();
-		
-			for (int i = 0; i < operations.size() && i < maxOperations; i++) {
-				subOperations.add(operations.remove(0));
+		metrics.onHedge();
+		this.attemptHedged(backup, subOperations, futureSubResult, attempted, pending);
+	}
+
+	private void attemptHedged(ServerInterface serverStub, Chunk subOperations, CompletableFuture<Integer> futureSubResult,
+			List<ServerInterface> attempted, AtomicInteger pending) {
+		synchronized (futureSubResult) {
+			attempted.add(serverStub);
+			pending.incrementAndGet();
+		}
+		hedgePolicy.onStart(serverStub);
+		long start = System.nanoTime();
+
+		CompletableFuture<Integer> reply;
+		if (serverStub instanceof NioServerStub) {
+			// Transport NIO: le lot reste en cours sans bloquer de fil du répartiteur.
+			reply = this.timedCalculateAsync((NioServerStub) serverStub, subOperations);
+		} else {
+			reply = CompletableFuture.supplyAsync(() -> {
+				try {
+					return this.timedCalculate(serverStub, subOperations);
+				} catch (ServerOverloadedException | RemoteException e) {
+					throw new CompletionException(e);
+				}
+			}, executorService);
+		}
+
+		reply.whenCompleteAsync((subResult, e) -> {
+			Throwable failure = (e == null) ? null : NioServerStub.unwrap(e);
+			hedgePolicy.onEnd(serverStub, subOperations.size(), System.nanoTime() - start, failure == null);
+
+			synchronized (futureSubResult) {
+				boolean last = pending.decrementAndGet() == 0;
+				if (futureSubResult.isDone()) {
+					// Une autre réponse a déjà été retenue.
+					if (failure != null && !(failure instanceof ServerOverloadedException)) {
+						this.removeServer(serverStub);
+					}
+					return;
+				}
+
+				if (failure == null) {
+					workQueue.complete(subOperations);
+					futureSubResult.complete(subResult);
+				} else if (failure instanceof ServerOverloadedException) {
+					if (last) {
+						// Exception envoyée lorsqu'un serveur est surchargé ou lorsqu'il y a un problème avec le remoting de Java RMI.
+						this.handleServerOverloadedException((ServerOverloadedException) failure, subOperations);
+						futureSubResult.complete(0);
+					} else {
+						System.out.println("Erreur: " + failure.getMessage());
+					}
+				} else {
+					if (last) {
+						// Exception envoyée lorsqu'un serveur de calcul est tué au beau milieu de l'exécution d'une tâche.
+						this.handleRemoteException(new RemoteException(failure.getMessage(), failure), subOperations, serverStub);
+						futureSubResult.complete(0);
+					} else {
+						this.removeServer(serverStub);
+					}
+				}
 			}
-					
-			futureSubResults.add(executeSubOperationsNonSecure(subOperations));
+		}, executorService);
+	}
+
+	private class NonSecureBatchExecutor implements PipelinedScheduler.BatchExecutor {
+
+		private final int maxOperations;
+
+		NonSecureBatchExecutor(int maxOperations) {
+			this.maxOperations = maxOperations;
 		}
 
-		return true;
+		@Override
+		public int getBatchSize(ServerInterface server) {
+			int batchSize = batchSizeController.getBatchSize(server);
+			if (batchSize == 0) {
+				// Le serveur a demandé d'attendre avant de lui renvoyer du travail.
+				return 0;
+			}
+
+			if (!batchSizeController.isAdaptive()) {
+				// La taille fixe reste bornee par ce que le serveur a dit pouvoir admettre.
+				batchSize = Math.min(maxOperations, batchSize);
+			}
+
+			if (reputationTracker != null) {
+				// Les serveurs peu fiables reçoivent des lots plus petits: le travail va surtout aux serveurs fiables.
+				batchSize = (int) Math.max(1, Math.round(batchSize * reputationTracker.getTrust(server)));
+			}
+			return batchSize;
+		}
+
+		@Override
+		public int getDepth(ServerInterface server, int depth) {
+			int weightedDepth = getWeightedDepth(server, depth);
+			if (reputationTracker != null) {
+				// Moins de lots en cours aussi, relativement au serveur le plus fiable: tant qu'aucun serveur
+				// ne s'est démarqué, tous gardent la profondeur entière.
+				double trust = reputationTracker.getRelativeTrust(server, servers.keySet());
+				weightedDepth = (int) Math.max(1, Math.round(weightedDepth * trust));
+			}
+			return weightedDepth;
+		}
+
+		@Override
+		public void onFailure(ServerInterface server, Throwable e) {
+			handleBatchFailure(server, e);
+		}
+
+		@Override
+		public CompletableFuture<Integer> execute(ServerInterface server, Chunk batch) {
+			if (reputationTracker != null) {
+				return executeSubOperationsReputation(batch, server);
+			}
+
+			// Les autres serveurs valident le lot dans un ordre aléatoire, en commençant par ceux
+			// dont la taille de lot permet d'accepter ce lot sans surcharge.
+			List<ServerInterface> candidates = new ArrayList<>(servers.keySet());
+			candidates.remove(server);
+			Collections.shuffle(candidates);
+			candidates.sort(Comparator.comparing(candidate -> getBatchSize(candidate) < batch.size()));
+			candidates.add(0, server);
+
+			if (quorumVoter != null) {
+				return executeSubOperationsQuorum(batch, candidates);
+			}
+			if (verificationBlocks > 0) {
+				return executeSubOperationsBlocks(batch, candidates);
+			}
+			return executeSubOperationsNonSecure(batch, candidates);
+		}
+
+	}
+
+	private CompletableFuture<Integer> executeSubOperationsNonSecure(Chunk subOperations, List<ServerInterface> candidates) {
+		CompletableFuture<Integer> futureSubResult = new CompletableFuture<>();
+
+		executorService.submit(() -> {
+			try {
+				futureSubResult.complete(this.calculateNonSecure(subOperations, candidates));
+			} catch (RuntimeException e) {
+				// Le lot est remis dans la file par l'ordonnanceur.
+				futureSubResult.completeExceptionally(e);
+			}
+		});
+
+		return futureSubResult;
+	}
+
+	private CompletableFuture<Integer> executeSubOperationsBlocks(Chunk subOperations, List<ServerInterface> candidates) {
+		CompletableFuture<Integer> futureSubResult = new CompletableFuture<>();
+
+		executorService.submit(() -> {
+			try {
+				futureSubResult.complete(this.calculateBlocks(subOperations, candidates));
+			} catch (RuntimeException e) {
+				// Le lot est remis dans la file par l'ordonnanceur.
+				futureSubResult.completeExceptionally(e);
+			}
+		});
+
+		return futureSubResult;
+	}
+
+	private CompletableFuture<Integer> executeSubOperationsQuorum(Chunk subOperations, List<ServerInterface> candidates) {
+		// Réponses reçues avant la décision, pour mesurer les désaccords de chaque serveur.
+		Map<ServerInterface, Integer> replies = new ConcurrentHashMap<>();
+
+		return quorumVoter.vote(candidates, server -> {
+					Integer reply = this.calculateReplica(server, subOperations);
+					if (reply != null) {
+						replies.put(server, reply);
+					}
+					return reply;
+				})
+				.thenApply(result -> {
+					if (result == null) {
+						// Aucune réplique n'a répondu: rajouter les opérations pour qu'elles soient traitées à nouveau.
+						workQueue.requeue(subOperations);
+						return 0;
+					}
+
+					this.recordVerdict(replies, result);
+					workQueue.complete(subOperations);
+					return result;
+				});
+	}
+
+	/**
+	 * Calcul d'une réplique pour le vote. Retourne null si le serveur est surchargé ou en panne.
+	 */
+	private Integer calculateReplica(ServerInterface serverStub, Chunk subOperations) {
+		try {
+			return this.timedCalculate(serverStub, subOperations);
+		} catch (ServerOverloadedException e) {
+			System.out.println("Erreur: " + e.getMessage());
+			return null;
+		} catch (RemoteException e) {
+			this.removeServer(serverStub);
+			return null;
+		}
 	}
 
-	private CompletableFuture<Integer> executeSubOperationsNonSecure(List<String> subOperations) {
+	private CompletableFuture<Integer> executeSubOperationsReputation(Chunk subOperations, ServerInterface serverStub) {
 		CompletableFuture<Integer> futureSubResult = new CompletableFuture<>();
 
 		executorService.submit(() -> {
-			futureSubResult.complete(this.calculateNonSecure(subOperations));
+			try {
+				futureSubResult.complete(this.calculateReputation(subOperations, serverStub));
+			} catch (RuntimeException e) {
+				// Le lot est remis dans la file par l'ordonnanceur.
+				futureSubResult.completeExceptionally(e);
+			}
 		});
 
 		return futureSubResult;
 	}
 
-	private int calculateNonSecure(List<String> subOperations) {
-		// Une tâche est envoyée à un serveur aléatoire.
-		Random random = new Random();
-		List<ServerInterface> keys = new ArrayList<>(this.servers.keySet());
+	private int calculateReputation(Chunk subOperations, ServerInterface serverStub) {
+		Integer firstResult = this.calculateReplica(serverStub, subOperations);
+		if (firstResult == null) {
+			// Rajouter les opérations non-complétées pour qu'elles soient traitées à nouveau.
+			workQueue.requeue(subOperations);
+			return 0;
+		}
+
+		// Vérification ponctuelle, d'autant plus fréquente que le serveur est peu fiable.
+		if (!reputationTracker.shouldVerify(serverStub)) {
+			return this.acceptUnverified(subOperations, serverStub, firstResult);
+		}
+
+		// Les vérificateurs sont sollicités du plus fiable au moins fiable, jusqu'à ce que deux serveurs s'accordent.
+		Map<ServerInterface, Integer> results = new LinkedHashMap<>();
+		results.put(serverStub, firstResult);
+		Integer verifiedResult = null;
+
+		List<ServerInterface> verifiers = reputationTracker.rankByTrust(this.servers.keySet());
+		verifiers.remove(serverStub);
+		for (ServerInterface verifier : verifiers) {
+			Integer result = this.calculateReplica(verifier, subOperations);
+			if (result == null) {
+				continue;
+			}
 
+			boolean agreement = results.containsValue(result);
+			results.put(verifier, result);
+			if (agreement) {
+				verifiedResult = result;
+				break;
+			}
+		}
+
+		this.recordVerdict(results, verifiedResult);
+		if (verifiedResult == null) {
+			// Aucun accord possible: retourner le premier résultat par défaut.
+			return this.acceptUnverified(subOperations, serverStub, firstResult);
+		}
+
+		for (Map.Entry<ServerInterface, Integer> result : results.entrySet()) {
+			if (result.getValue().equals(verifiedResult)) {
+				reputationTracker.recordAgreement(result.getKey());
+			} else {
+				reputationTracker.recordDisagreement(result.getKey());
+				this.quarantineServer(result.getKey());
+			}
+		}
+
+		workQueue.complete(subOperations);
+		return verifiedResult;
+	}
+
+	/**
+	 * Accepte un résultat non vérifié. Le lot est retenu pour être calculé à nouveau si le serveur est pris en faute.
+	 */
+	private int acceptUnverified(Chunk subOperations, ServerInterface serverStub, int result) {
+		if (!reputationTracker.recordUnverified(serverStub, subOperations, result)) {
+			// Le serveur a été mis en quarantaine ou retiré pendant le calcul: son résultat n'est plus accepté.
+			workQueue.requeue(subOperations);
+			return 0;
+		}
+
+		workQueue.complete(subOperations);
+		return result;
+	}
+
+	private int calculateNonSecure(Chunk subOperations, List<ServerInterface> keys) {
+		// Les serveurs candidats sont déjà dans un ordre aléatoire.
 		// Une tâche n'est jamais envoyée deux fois au même serveur.
-		ServerInterface firstRandomServer = keys.remove( random.nextInt(keys.size()) );
+		ServerInterface firstRandomServer = keys.remove(0);
 		List<Integer> results = new ArrayList<>();
+		Map<ServerInterface, Integer> replies = new LinkedHashMap<>();
 		int firstResult = 0;
 		try {
-			firstResult = firstRandomServer.calculate(subOperations);
+			firstResult = this.timedCalculate(firstRandomServer, subOperations);
+			replies.put(firstRandomServer, firstResult);
 		} catch (RemoteException e) {
 			// Exception envoyée lorsqu'un serveur de calcul est tué au beau milieu de l'exécution d'une tâche.
 			this.handleRemoteException(e, subOperations, firstRandomServer);
@@ -345,10 +1229,11 @@ public class Repartiteur {
 
 		try {
 			if (!keys.isEmpty()) {
-				ServerInterface otherRandomServer = keys.remove( random.nextInt(keys.size()) );
+				ServerInterface otherRandomServer = keys.remove(0);
 				int otherResult = 0;
 				try {
-					otherResult = otherRandomServer.calculate(subOperations);
+					otherResult = this.timedCalculate(otherRandomServer, subOperations);
+					replies.put(otherRandomServer, otherResult);
 				} catch (RemoteException e) {
 					// Exception envoyée lorsqu'un serveur de calcul est tué au beau milieu de l'exécution d'une tâche.
 					this.handleRemoteException(e, subOperations, otherRandomServer);
@@ -359,9 +1244,10 @@ public class Repartiteur {
 					results.add(otherResult);
 	
 					if (!keys.isEmpty()) {
-						otherRandomServer = keys.remove( random.nextInt(keys.size()) );
+						otherRandomServer = keys.remove(0);
 						try {
-							otherResult = otherRandomServer.calculate(subOperations);
+							otherResult = this.timedCalculate(otherRandomServer, subOperations);
+							replies.put(otherRandomServer, otherResult);
 						} catch (RemoteException e) {
 							// Exception envoyée lorsqu'un serveur de calcul est tué au beau milieu de l'exécution d'une tâche.
 							this.handleRemoteException(e, subOperations, otherRandomServer);
@@ -370,15 +1256,20 @@ public class Repartiteur {
 					} else {
 						// Tous les serveurs ont été utilisé.
 						// Retourner le premier résultat par défaut si tous les résultats obtenus diffèrent.
+						this.recordVerdict(replies, null);
+						workQueue.complete(subOperations);
 						return firstResult;
 					}
 				}
 	
 				// Retourner un résultat à l'instant où il a été obtenu par deux serveurs différents
 				results.add(otherResult);
+				this.recordVerdict(replies, otherResult);
+				workQueue.complete(subOperations);
 				return otherResult;
 			} else {
 				// Aucune validation peut être faite s'il n'y a qu'un serveur.
+				workQueue.complete(subOperations);
 				return firstResult;
 			}
 		} catch (ServerOverloadedException e) {
@@ -388,23 +1279,263 @@ public class Repartiteur {
 		}
 	}
 
-	private void handleServerOverloadedException(ServerOverloadedException e, List<String> subOperations) {
-		// Rajouter les opérations non-complétées pour qu'elles soient traitées à nouveau.
-		for (String operation : subOperations) {
-			operations.add(operation);
+	/**
+	 * Mode non-sécurisé par blocs. Le lot est découpé en blocs dont chaque serveur retourne le résultat.
+	 * Deux serveurs calculent le lot entier; seuls les blocs sur lesquels ils diffèrent sont regroupés
+	 * et envoyés au serveur suivant, jusqu'à ce que chaque bloc ait été obtenu par deux serveurs différents.
+	 */
+	private int calculateBlocks(Chunk subOperations, List<ServerInterface> candidates) {
+		int blockSize = (subOperations.size() + verificationBlocks - 1) / verificationBlocks;
+		int nbBlocks = (subOperations.size() + blockSize - 1) / blockSize;
+
+		// Résultats obtenus pour chaque bloc non vérifié, et blocs encore à vérifier (en ordre).
+		List<List<Integer>> observed = new ArrayList<>();
+		List<Integer> pending = new ArrayList<>();
+		int[] verified = new int[nbBlocks];
+		for (int block = 0; block < nbBlocks; block++) {
+			observed.add(new ArrayList<>());
+			pending.add(block);
+		}
+		// Totaux des serveurs qui ont calculé le lot entier, pour mesurer leurs désaccords.
+		Map<ServerInterface, Integer> replies = new LinkedHashMap<>();
+
+		// Les serveurs candidats sont déjà dans un ordre aléatoire.
+		for (ServerInterface server : candidates) {
+			if (pending.isEmpty()) {
+				break;
+			}
+
+			// Seul le dernier bloc peut être incomplet: les blocs regroupés gardent leurs bornes.
+			Chunk blocks = subOperations;
+			if (pending.size() < nbBlocks) {
+				List<Chunk> parts = new ArrayList<>();
+				for (int block : pending) {
+					parts.add(subOperations.slice(block * blockSize, Math.min(subOperations.size(), (block + 1) * blockSize)));
+				}
+				blocks = Chunk.concat(parts);
+			}
+
+			int[] values;
+			try {
+				values = this.timedCalculateBlocks(server, blocks, blockSize);
+			} catch (RemoteException e) {
+				// Exception envoyée lorsqu'un serveur de calcul est tué au beau milieu de l'exécution d'une tâche.
+				this.handleRemoteException(e, subOperations, server);
+				return 0;
+			} catch (ServerOverloadedException e) {
+				// Exception envoyée lorsqu'un serveur est surchargé ou lorsqu'il y a un problème avec le remoting de Java RMI.
+				this.handleServerOverloadedException(e, subOperations);
+				return 0;
+			}
+			if (blocks == subOperations) {
+				replies.put(server, combine(values));
+			}
+
+			// Un bloc est vérifié à l'instant où son résultat a été obtenu par deux serveurs différents.
+			List<Integer> stillPending = new ArrayList<>();
+			for (int j = 0; j < pending.size(); j++) {
+				int block = pending.get(j);
+				if (observed.get(block).contains(values[j])) {
+					verified[block] = values[j];
+				} else {
+					observed.get(block).add(values[j]);
+					stillPending.add(block);
+				}
+			}
+			pending = stillPending;
+		}
+
+		// Retourner le premier résultat par défaut des blocs dont tous les résultats obtenus diffèrent
+		// (aucune validation n'est faite s'il n'y a qu'un serveur).
+		for (int block : pending) {
+			verified[block] = observed.get(block).get(0);
+		}
+
+		int result = combine(verified);
+		if (replies.size() > 1) {
+			this.recordVerdict(replies, pending.isEmpty() ? result : null);
+		}
+		workQueue.complete(subOperations);
+		return result;
+	}
+
+	private static int combine(int[] values) {
+		int result = 0;
+		for (int value : values) {
+			result = (result + value) % 4000;
+		}
+		return result;
+	}
+
+	/**
+	 * Version de timedCalculate qui retourne le résultat de chaque bloc de blockSize opérations.
+	 */
+	private int[] timedCalculateBlocks(ServerInterface serverStub, Chunk subOperations, int blockSize)
+			throws ServerOverloadedException, RemoteException {
+		long start = System.nanoTime();
+		try {
+			int[] counts = subOperations.hasCounts() ? subOperations.getCounts() : null;
+			int[] results = serverStub.calculateBlocks(subOperations.getOpcodes(), subOperations.getParameters(), counts, blockSize);
+			long latencyNanos = System.nanoTime() - start;
+			batchSizeController.onSuccess(serverStub, subOperations.size(), latencyNanos);
+			this.stats(serverStub).onSuccess(subOperations.size(), latencyNanos);
+			if (costModel != null) {
+				costModel.observe(subOperations, latencyNanos);
+			}
+			return results;
+		} catch (ServerOverloadedException e) {
+			batchSizeController.onOverload(serverStub, subOperations.size(), e);
+			this.stats(serverStub).onRefusal();
+			throw e;
+		} catch (RemoteException e) {
+			this.stats(serverStub).onFailure();
+			throw e;
+		} catch (RuntimeException e) {
+			// Java RMI relance telles quelles les exceptions d'exécution du serveur: c'est une panne du serveur.
+			this.stats(serverStub).onFailure();
+			throw new RemoteException(e.getMessage(), e);
 		}
+	}
+
+	/**
+	 * Appel de calcul chronométré dont le résultat alimente le contrôleur de taille des lots.
+	 */
+	private int timedCalculate(ServerInterface serverStub, Chunk subOperations)
+			throws ServerOverloadedException, RemoteException {
+		long start = System.nanoTime();
+		try {
+			// Une tranche dédoublonnée est envoyée avec la multiplicité de chaque opération.
+			int result = subOperations.hasCounts()
+					? serverStub.calculate(subOperations.getOpcodes(), subOperations.getParameters(), subOperations.getCounts())
+					: serverStub.calculate(subOperations.getOpcodes(), subOperations.getParameters());
+			long latencyNanos = System.nanoTime() - start;
+			batchSizeController.onSuccess(serverStub, subOperations.size(), latencyNanos);
+			this.stats(serverStub).onSuccess(subOperations.size(), latencyNanos);
+			if (costModel != null) {
+				costModel.observe(subOperations, latencyNanos);
+			}
+			return result;
+		} catch (ServerOverloadedException e) {
+			batchSizeController.onOverload(serverStub, subOperations.size(), e);
+			this.stats(serverStub).onRefusal();
+			throw e;
+		} catch (RemoteException e) {
+			this.stats(serverStub).onFailure();
+			throw e;
+		} catch (RuntimeException e) {
+			// Java RMI relance telles quelles les exceptions d'exécution du serveur: c'est une panne du serveur.
+			this.stats(serverStub).onFailure();
+			throw new RemoteException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Version asynchrone de timedCalculate pour le transport NIO.
+	 */
+	private CompletableFuture<Integer> timedCalculateAsync(NioServerStub serverStub, Chunk subOperations) {
+		long start = System.nanoTime();
+		int[] counts = subOperations.hasCounts() ? subOperations.getCounts() : null;
+
+		return serverStub.calculateAsync(subOperations.getOpcodes(), subOperations.getParameters(), counts)
+				.whenComplete((result, e) -> {
+					if (e == null) {
+						long latencyNanos = System.nanoTime() - start;
+						batchSizeController.onSuccess(serverStub, subOperations.size(), latencyNanos);
+						this.stats(serverStub).onSuccess(subOperations.size(), latencyNanos);
+						if (costModel != null) {
+							costModel.observe(subOperations, latencyNanos);
+						}
+					} else if (NioServerStub.unwrap(e) instanceof ServerOverloadedException) {
+						batchSizeController.onOverload(serverStub, subOperations.size(),
+								(ServerOverloadedException) NioServerStub.unwrap(e));
+						this.stats(serverStub).onRefusal();
+					} else {
+						this.stats(serverStub).onFailure();
+					}
+				});
+	}
+
+	private ServerStats stats(ServerInterface serverStub) {
+		return this.serverStats.computeIfAbsent(serverStub, key -> new ServerStats());
+	}
+
+	/**
+	 * Compare les résultats obtenus pour un lot au résultat retenu (null si aucun accord n'a été trouvé).
+	 */
+	private void recordVerdict(Map<ServerInterface, Integer> results, Integer verifiedResult) {
+		if (new HashSet<>(results.values()).size() > 1) {
+			metrics.onContestedBatch();
+		}
+
+		if (verifiedResult != null) {
+			for (Map.Entry<ServerInterface, Integer> result : results.entrySet()) {
+				this.stats(result.getKey()).onVerdict(result.getValue().equals(verifiedResult));
+			}
+		}
+	}
+
+	private void handleServerOverloadedException(ServerOverloadedException e, Chunk subOperations) {
+		// Rajouter les opérations non-complétées pour qu'elles soient traitées à nouveau.
+		workQueue.requeue(subOperations);
 		
 		System.out.println("Erreur: " + e.getMessage());
 	}
 
-	private void handleRemoteException(RemoteException e, List<String> subOperations, ServerInterface serverStub) {
+	private void handleRemoteException(RemoteException e, Chunk subOperations, ServerInterface serverStub) {
 		// Rajouter les opérations non-complétées pour qu'elles soient traitées à nouveau.
-		for (String operation : subOperations) {
-			operations.add(operation);
-		}
+		workQueue.requeue(subOperations);
 
 		// Retirer le serveur défectueux des serveurs disponibles.
-		this.servers.remove(serverStub);
+		this.removeServer(serverStub);
+	}
+
+	/**
+	 * Lot dont le futur s'est terminé par une exception: l'ordonnanceur l'a remis dans la file.
+	 */
+	private void handleBatchFailure(ServerInterface serverStub, Throwable e) {
+		System.out.println("Erreur: " + e.getMessage());
+		this.removeServer(serverStub);
+	}
+
+	private void quarantineServer(ServerInterface serverStub) {
+		// Garder au moins deux serveurs pour pouvoir encore vérifier les résultats.
+		ServerConfig serverConfig = this.servers.get(serverStub);
+		if (this.servers.size() > 2 && serverConfig != null) {
+			this.quarantinedConfigs.add(serverConfig);
+			Map<Chunk, Integer> unverified = reputationTracker.takeUnverified(serverStub);
+			this.removeServer(serverStub);
+			System.out.println("Erreur: Un serveur a retourné un résultat faux et a été mis en quarantaine.");
+
+			// Les résultats que ce serveur a retournés sans vérification ne sont plus fiables: les calculer à nouveau.
+			int reopened = 0;
+			for (Map.Entry<Chunk, Integer> batch : unverified.entrySet()) {
+				if (this.scheduler.reopen(batch.getKey(), batch.getValue())) {
+					reopened++;
+				}
+			}
+			if (reopened > 0) {
+				System.out.println(reopened + " lots non vérifiés de ce serveur remis dans la file.");
+			}
+		}
+	}
+
+	private void removeServer(ServerInterface serverStub) {
+		ServerConfig serverConfig = this.servers.remove(serverStub);
+		this.batchSizeController.unregister(serverStub);
+		if (reputationTracker != null && serverConfig != null && !this.quarantinedConfigs.contains(serverConfig)) {
+			// Un serveur retiré ne peut plus être pris en faute: oublier ses lots non vérifiés.
+			reputationTracker.forgetUnverified(serverStub);
+		}
+
+		// Les mesures d'un serveur retiré restent consultables.
+		ServerStats stats = this.serverStats.get(serverStub);
+		if (stats != null) {
+			stats.deactivate();
+		}
+
+		if (serverStub instanceof NioServerStub) {
+			((NioServerStub) serverStub).close();
+		}
 	}
 
 }
@@ -0,0 +1,168 @@
+package repartiteur;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import shared.ServerInterface;
+
+/**
+ * Reputation des serveurs de calcul en mode non-securise.
+ * 
+ * La confiance d'un serveur est la moyenne a posteriori de ses accords avec
+ * les resultats verifies ((accords + 1) / (verifications + 2)): un nouveau
+ * serveur part donc de 0.5. Un lot n'est verifie par un second serveur
+ * qu'avec une probabilite qui diminue avec la confiance, sans descendre sous
+ * un taux minimal. Le repartiteur met en quarantaine les serveurs pris a
+ * retourner un resultat faux.
+ *
+ * Les lots acceptes sans verification sont retenus par serveur, avec leur
+ * resultat, pour etre calcules a nouveau si le serveur est pris en faute.
+ * Au plus maxUnverifiedOperations operations sont retenues par serveur: les
+ * lots les plus anciens sont alors oublies.
+ */
+public class ReputationTracker {
+
+	private final double minSpotCheckRate;
+	private final long maxUnverifiedOperations;
+	private final Map<ServerInterface, Score> scores = new ConcurrentHashMap<>();
+	private final Map<ServerInterface, Unverified> unverified = new ConcurrentHashMap<>();
+
+	public ReputationTracker(double minSpotCheckRate, long maxUnverifiedOperations) {
+		if (minSpotCheckRate < 0 || minSpotCheckRate > 1) {
+			throw new IllegalArgumentException("Le taux de verification doit etre entre 0 et 1.");
+		}
+
+		this.minSpotCheckRate = minSpotCheckRate;
+		this.maxUnverifiedOperations = maxUnverifiedOperations;
+	}
+
+	public double getTrust(ServerInterface server) {
+		return score(server).getTrust();
+	}
+
+	/**
+	 * Confiance du serveur relative au plus fiable des serveurs donnes (1 pour le plus fiable).
+	 */
+	public double getRelativeTrust(ServerInterface server, Collection<ServerInterface> servers) {
+		double maxTrust = 0;
+		for (ServerInterface other : servers) {
+			maxTrust = Math.max(maxTrust, getTrust(other));
+		}
+		return (maxTrust > 0) ? Math.min(1, getTrust(server) / maxTrust) : 1;
+	}
+
+	/**
+	 * Probabilite qu'un lot calcule par ce serveur soit verifie par un autre serveur.
+	 */
+	public double getSpotCheckRate(ServerInterface server) {
+		return Math.max(minSpotCheckRate, 1 - getTrust(server));
+	}
+
+	public boolean shouldVerify(ServerInterface server) {
+		return ThreadLocalRandom.current().nextDouble() < getSpotCheckRate(server);
+	}
+
+	public void recordAgreement(ServerInterface server) {
+		score(server).record(true);
+	}
+
+	/**
+	 * Le serveur a retourne un resultat contredit par un resultat verifie.
+	 */
+	public void recordDisagreement(ServerInterface server) {
+		score(server).record(false);
+	}
+
+	/**
+	 * Retient le resultat d'un lot accepte sans verification. Retourne faux si les lots du serveur
+	 * ont deja ete retires (serveur pris en faute ou retire): le resultat ne doit pas etre accepte.
+	 */
+	public boolean recordUnverified(ServerInterface server, Chunk batch, int result) {
+		return unverified.computeIfAbsent(server, key -> new Unverified()).add(batch, result, maxUnverifiedOperations);
+	}
+
+	/**
+	 * Retire et retourne les lots retenus du serveur avec leur resultat. Les lots que le serveur
+	 * retournera ensuite ne sont plus retenus (voir recordUnverified).
+	 */
+	public Map<Chunk, Integer> takeUnverified(ServerInterface server) {
+		return unverified.computeIfAbsent(server, key -> new Unverified()).take();
+	}
+
+	/**
+	 * Oublie les lots retenus du serveur, sans l'empecher d'en retourner d'autres (serveur retire qui peut revenir).
+	 */
+	public void forgetUnverified(ServerInterface server) {
+		unverified.remove(server);
+	}
+
+	/**
+	 * Serveurs du plus fiable au moins fiable (ordre aleatoire a confiance egale).
+	 */
+	public List<ServerInterface> rankByTrust(Collection<ServerInterface> servers) {
+		List<ServerInterface> ranked = new ArrayList<>(servers);
+		Collections.shuffle(ranked);
+		ranked.sort(Comparator.comparingDouble(this::getTrust).reversed());
+		return ranked;
+	}
+
+	private Score score(ServerInterface server) {
+		return scores.computeIfAbsent(server, key -> new Score());
+	}
+
+	private static class Unverified {
+
+		private Map<Chunk, Integer> batches = new LinkedHashMap<>();
+		private long operations = 0;
+
+		synchronized boolean add(Chunk batch, int result, long maxOperations) {
+			if (batches == null) {
+				return false;
+			}
+
+			batches.put(batch, result);
+			operations += batch.size();
+			Iterator<Chunk> oldest = batches.keySet().iterator();
+			while (operations > maxOperations && oldest.hasNext()) {
+				operations -= oldest.next().size();
+				oldest.remove();
+			}
+			return true;
+		}
+
+		synchronized Map<Chunk, Integer> take() {
+			Map<Chunk, Integer> taken = (batches != null) ? batches : Collections.emptyMap();
+			batches = null;
+			return taken;
+		}
+
+	}
+
+	private static class Score {
+
+		private int agreements = 0;
+		private int disagreements = 0;
+
+		synchronized double getTrust() {
+			return (agreements + 1.0) / (agreements + disagreements + 2.0);
+		}
+
+		synchronized void record(boolean agreement) {
+			if (agreement) {
+				agreements++;
+			} else {
+				disagreements++;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,286 @@
+package repartiteur;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Journal des resultats confirmes, pour reprendre une tache apres une panne
+ * du repartiteur.
+ *
+ * Le journal est un fichier en ajout seulement, projete en memoire (mmap).
+ * Chaque enregistrement donne une plage [debut, fin) d'operations de l'entree
+ * et le resultat confirme de cette plage, avec une somme de controle. Un
+ * enregistrement incomplet (repartiteur tue pendant l'ecriture) est ignore a
+ * la relecture. Les ecritures sont faites par un fil dedie: la confirmation
+ * d'un lot ne fait qu'ajouter l'enregistrement a une file.
+ *
+ * A la reprise avec la meme entree (meme taille et date de modification), le
+ * resultat des plages journalisees est recupere et seules les autres
+ * operations sont reparties. Sinon, le journal est recommence.
+ *
+ * Un enregistrement dont le debut suit la fin retire la plage [fin, debut) et
+ * son resultat, journalises plus tot: le lot sera calcule a nouveau.
+ *
+ *   Entete: [code magique][version][taille de l'entree (long)][date de l'entree (long)]
+ *   Enregistrement: [debut (long)][fin (long)][resultat (int)][CRC32 des 20 octets precedents (int)]
+ */
+public class ResultJournal {
+
+	// "NJRN" en ASCII.
+	private static final int MAGIC = 0x4E4A524E;
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 24;
+	private static final int RECORD_SIZE = 24;
+	// Le fichier est projete par regions; une nouvelle region est projetee quand la precedente est pleine.
+	private static final long REGION_SIZE = RECORD_SIZE * (1L << 16);
+	private static final long FORCE_INTERVAL_MS = 1000;
+	// Marque de fin de la file des enregistrements.
+	private static final long[] END = new long[0];
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final BlockingQueue<long[]> pendingRecords = new LinkedBlockingQueue<>();
+	private final Thread writer;
+
+	// Plages recuperees, triees et fusionnees: debuts et fins.
+	private final long[] recoveredStarts;
+	private final long[] recoveredEnds;
+	private final int recoveredResult;
+	private final long recoveredOperations;
+
+	// Etat du fil d'ecriture.
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long writePosition;
+
+	private ResultJournal(RandomAccessFile file, List<long[]> ranges, int recoveredResult, long writePosition) throws IOException {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.recoveredResult = recoveredResult;
+		this.writePosition = writePosition;
+
+		ranges.sort((a, b) -> Long.compare(a[0], b[0]));
+		List<long[]> merged = new ArrayList<>();
+		long operations = 0;
+		for (long[] range : ranges) {
+			operations += range[1] - range[0];
+			long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && range[0] <= last[1]) {
+				last[1] = Math.max(last[1], range[1]);
+			} else {
+				merged.add(range.clone());
+			}
+		}
+		this.recoveredOperations = operations;
+		this.recoveredStarts = merged.stream().mapToLong(range -> range[0]).toArray();
+		this.recoveredEnds = merged.stream().mapToLong(range -> range[1]).toArray();
+
+		this.region = mapRegion(writePosition);
+		this.writer = new Thread(this::writeRecords, "journal");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Ouvre le journal d'une entree: relit les enregistrements valides s'il correspond
+	 * a cette entree, ou le recommence sinon.
+	 */
+	public static ResultJournal open(File journalFile, File input) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(journalFile, "rw");
+		FileChannel channel = file.getChannel();
+		List<long[]> ranges = new ArrayList<>();
+		List<long[]> retracted = new ArrayList<>();
+		int result = 0;
+		long position = HEADER_SIZE;
+
+		boolean matches = false;
+		if (channel.size() >= HEADER_SIZE) {
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+			matches = header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+					&& header.getLong(8) == input.length() && header.getLong(16) == input.lastModified();
+		}
+
+		if (matches) {
+			MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			while (position + RECORD_SIZE <= channel.size()) {
+				long start = records.getLong((int) position);
+				long end = records.getLong((int) position + 8);
+				int value = records.getInt((int) position + 16);
+				if (start < 0 || end < 0 || end == start || records.getInt((int) position + 20) != checksum(start, end, value)) {
+					// Fin du journal, ou enregistrement incomplet: la suite sera ecrasee.
+					break;
+				}
+				if (end < start) {
+					retracted.add(new long[] { end, start });
+					result = Math.floorMod(result - value, 4000);
+				} else {
+					ranges.add(new long[] { start, end });
+					result = (result + value) % 4000;
+				}
+				position += RECORD_SIZE;
+			}
+
+			// Un retrait peut etre journalise avant la plage qu'il retire: les appliquer une fois tout relu.
+			for (long[] range : retracted) {
+				for (int i = 0; i < ranges.size(); i++) {
+					if (Arrays.equals(ranges.get(i), range)) {
+						ranges.remove(i);
+						break;
+					}
+				}
+			}
+		} else {
+			file.setLength(0);
+			MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+			header.putInt(MAGIC).putInt(VERSION).putLong(input.length()).putLong(input.lastModified());
+			header.force();
+		}
+
+		return new ResultJournal(file, ranges, result, position);
+	}
+
+	/**
+	 * Resultat combine des plages recuperees a l'ouverture.
+	 */
+	public int getRecoveredResult() {
+		return recoveredResult;
+	}
+
+	/**
+	 * Nombre d'operations recuperees a l'ouverture.
+	 */
+	public long getRecoveredOperations() {
+		return recoveredOperations;
+	}
+
+	/**
+	 * Consommateur qui ne remet a consumer que les parties des tranches absentes du journal.
+	 * Les tranches sans position sont remises telles quelles.
+	 */
+	public Consumer<Chunk> skipRecovered(Consumer<Chunk> consumer) {
+		return chunk -> {
+			long start = chunk.getPosition();
+			if (start < 0 || recoveredStarts.length == 0) {
+				consumer.accept(chunk);
+				return;
+			}
+
+			long end = start + chunk.size();
+			// Premiere plage recuperee qui finit apres le debut de la tranche.
+			int range = Arrays.binarySearch(recoveredEnds, start);
+			range = (range >= 0) ? range + 1 : -range - 1;
+
+			long next = start;
+			for (; range < recoveredStarts.length && recoveredStarts[range] < end; range++) {
+				if (recoveredStarts[range] > next) {
+					consumer.accept(chunk.slice((int) (next - start), (int) (recoveredStarts[range] - start)));
+				}
+				next = Math.max(next, recoveredEnds[range]);
+			}
+			if (next < end) {
+				consumer.accept(chunk.slice((int) (next - start), chunk.size()));
+			}
+		};
+	}
+
+	/**
+	 * Ajoute le resultat confirme d'une plage de l'entree. L'ecriture est faite plus tard par le fil du journal.
+	 */
+	public void append(long position, int size, int result) {
+		pendingRecords.add(new long[] { position, position + size, result });
+	}
+
+	/**
+	 * Retire une plage deja journalisee (ou en attente d'ecriture) et son resultat.
+	 */
+	public void retract(long position, int size, int result) {
+		pendingRecords.add(new long[] { position + size, position, result });
+	}
+
+	/**
+	 * Ecrit les enregistrements en attente, force leur ecriture sur disque et ferme le journal.
+	 */
+	public void close() {
+		pendingRecords.add(END);
+		try {
+			writer.join();
+			file.close();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.out.println("Erreur: " + e.getMessage());
+		}
+	}
+
+	private void writeRecords() {
+		long lastForce = System.nanoTime();
+
+		try {
+			while (true) {
+				long[] record = pendingRecords.poll(FORCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				if (record == END) {
+					break;
+				}
+				if (record != null) {
+					write(record[0], record[1], (int) record[2]);
+				}
+
+				// Les pages ecrites survivent a la mort du processus; forcer aussi leur ecriture sur disque de temps en temps.
+				if (System.nanoTime() - lastForce >= TimeUnit.MILLISECONDS.toNanos(FORCE_INTERVAL_MS)) {
+					region.force();
+					lastForce = System.nanoTime();
+				}
+			}
+			region.force();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			System.out.println("Erreur: " + e.getMessage());
+		}
+	}
+
+	private void write(long start, long end, int result) throws IOException {
+		if (writePosition + RECORD_SIZE > regionStart + region.capacity()) {
+			region.force();
+			region = mapRegion(writePosition);
+		}
+
+		int offset = (int) (writePosition - regionStart);
+		region.putLong(offset, start);
+		region.putLong(offset + 8, end);
+		region.putInt(offset + 16, result);
+		region.putInt(offset + 20, checksum(start, end, result));
+		writePosition += RECORD_SIZE;
+	}
+
+	private MappedByteBuffer mapRegion(long position) throws IOException {
+		regionStart = position;
+		return channel.map(FileChannel.MapMode.READ_WRITE, position, REGION_SIZE);
+	}
+
+	private static int checksum(long start, long end, int result) {
+		CRC32 crc = new CRC32();
+		byte[] bytes = new byte[20];
+		for (int i = 0; i < 8; i++) {
+			bytes[i] = (byte) (start >>> (56 - 8 * i));
+			bytes[8 + i] = (byte) (end >>> (56 - 8 * i));
+		}
+		for (int i = 0; i < 4; i++) {
+			bytes[16 + i] = (byte) (result >>> (24 - 8 * i));
+		}
+		crc.update(bytes);
+		return (int) crc.getValue();
+	}
+
+}
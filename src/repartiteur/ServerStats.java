@@ -0,0 +1,117 @@
+package repartiteur;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import shared.LatencyHistogram;
+
+/**
+ * Mesures d'un serveur vu du repartiteur: lots reussis, refus pour
+ * surcharge, pannes, desaccords avec le resultat retenu lors d'une
+ * verification, et latence des appels (reseau compris).
+ */
+public class ServerStats implements ServerStatsMBean {
+
+	private final long startNanos = System.nanoTime();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder operations = new LongAdder();
+	private final LongAdder refusals = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder agreements = new LongAdder();
+	private final LongAdder disagreements = new LongAdder();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private volatile boolean active = true;
+
+	void onSuccess(int nbOperations, long latencyNanos) {
+		batches.increment();
+		operations.add(nbOperations);
+		latency.record(latencyNanos);
+	}
+
+	void onRefusal() {
+		refusals.increment();
+	}
+
+	void onFailure() {
+		failures.increment();
+	}
+
+	/**
+	 * Resultat du serveur compare au resultat retenu pour un lot verifie.
+	 */
+	void onVerdict(boolean agreement) {
+		if (agreement) {
+			agreements.increment();
+		} else {
+			disagreements.increment();
+		}
+	}
+
+	void deactivate() {
+		active = false;
+	}
+
+	@Override
+	public boolean isActive() {
+		return active;
+	}
+
+	@Override
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	@Override
+	public long getOperations() {
+		return operations.sum();
+	}
+
+	@Override
+	public long getRefusals() {
+		return refusals.sum();
+	}
+
+	@Override
+	public double getRefusalRate() {
+		long refused = refusals.sum();
+		long total = refused + batches.sum();
+		return (total == 0) ? 0 : (double) refused / total;
+	}
+
+	@Override
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	@Override
+	public long getDisagreements() {
+		return disagreements.sum();
+	}
+
+	@Override
+	public double getDisagreementRate() {
+		long disagreed = disagreements.sum();
+		long total = disagreed + agreements.sum();
+		return (total == 0) ? 0 : (double) disagreed / total;
+	}
+
+	@Override
+	public double getOperationsPerSecond() {
+		return operations.sum() / Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+	}
+
+	@Override
+	public double getLatencyMeanMillis() {
+		return latency.getMeanMillis();
+	}
+
+	@Override
+	public double getLatencyP50Millis() {
+		return latency.getPercentileMillis(0.5);
+	}
+
+	@Override
+	public double getLatencyP99Millis() {
+		return latency.getPercentileMillis(0.99);
+	}
+
+}
@@ -0,0 +1,32 @@
+package repartiteur;
+
+/**
+ * Mesures du repartiteur pour un serveur de calcul, publiees par JMX.
+ */
+public interface ServerStatsMBean {
+
+	boolean isActive();
+
+	long getBatches();
+
+	long getOperations();
+
+	long getRefusals();
+
+	double getRefusalRate();
+
+	long getFailures();
+
+	long getDisagreements();
+
+	double getDisagreementRate();
+
+	double getOperationsPerSecond();
+
+	double getLatencyMeanMillis();
+
+	double getLatencyP50Millis();
+
+	double getLatencyP99Millis();
+
+}
@@ -0,0 +1,292 @@
+package repartiteur;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import shared.Opcodes;
+
+/**
+ * File de travail concurrente du repartiteur.
+ * 
+ * Les tranches sont conservees dans une file sans verrou. Plusieurs fils
+ * peuvent reclamer des operations (claim) et remettre dans la file les
+ * tranches qui ont echoue (requeue) en meme temps. Le travail n'est considere
+ * termine qu'une fois chaque operation confirmee (complete): une tranche en
+ * cours de calcul n'est donc jamais perdue, ni comptee deux fois.
+ *
+ * Avec un modele de cout, un lot reclame est aussi borne par un budget de
+ * travail estime: celui d'un lot de taille maximale de cout moyen. Les lots
+ * d'operations couteuses sont alors plus courts, et les lots ont tous a peu
+ * pres la meme duree.
+ *
+ * Avec un journal, un lot reclame couvre une plage contigue de l'entree et le
+ * resultat de chaque lot confirme est journalise (voir ResultJournal).
+ */
+public class WorkQueue implements BatchQueue {
+
+	private static final long BACKPRESSURE_POLL_MS = 10;
+
+	private final ConcurrentLinkedDeque<Chunk> chunks = new ConcurrentLinkedDeque<>();
+
+	// Operations ajoutees mais pas encore confirmees (en file ou en cours de calcul).
+	private final AtomicLong pendingOperations = new AtomicLong();
+	private final LongAdder completedOperations = new LongAdder();
+	private final LongAdder requeues = new LongAdder();
+	private final Object signal = new Object();
+	private volatile boolean closed = false;
+
+	// Modele de cout (null: lots formes par nombre d'operations) et unites de travail ajoutees.
+	private final CostModel costModel;
+	private final LongAdder addedOperations = new LongAdder();
+	private final DoubleAdder addedPellCalls = new DoubleAdder();
+	private final DoubleAdder addedPrimeIterations = new DoubleAdder();
+
+	// Journal des resultats (null: aucun) et lots confirmes dont le resultat n'est pas encore combine.
+	private volatile ResultJournal journal = null;
+	private final Set<Chunk> confirmedBatches = ConcurrentHashMap.newKeySet();
+
+	public WorkQueue() {
+		this(null);
+	}
+
+	public WorkQueue(CostModel costModel) {
+		this.costModel = costModel;
+	}
+
+	/**
+	 * Journalise le resultat des lots confirmes. A appeler avant d'ajouter des tranches.
+	 */
+	public void setJournal(ResultJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Ajoute une nouvelle tranche a traiter.
+	 */
+	public void add(Chunk chunk) {
+		if (costModel != null) {
+			addWork(chunk);
+		}
+		pendingOperations.addAndGet(chunk.size());
+		chunks.offerLast(chunk);
+		signalAll();
+	}
+
+	/**
+	 * Comme {@link #add(Chunk)}, mais attend d'abord que le nombre d'operations non confirmees
+	 * descende sous maxPendingOperations. La memoire reste bornee pour une entree sans fin.
+	 */
+	public void put(Chunk chunk, long maxPendingOperations) throws InterruptedException {
+		synchronized (signal) {
+			while (pendingOperations.get() >= maxPendingOperations) {
+				// Les confirmations ne reveillent pas la file: verifier regulierement.
+				TimeUnit.MILLISECONDS.timedWait(signal, BACKPRESSURE_POLL_MS);
+			}
+		}
+		add(chunk);
+	}
+
+	/**
+	 * Indique qu'aucune nouvelle tranche ne sera ajoutee.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		signalAll();
+	}
+
+	/**
+	 * Reclame au plus maxOperations operations, en decoupant ou en regroupant
+	 * les tranches de la file. Retourne null si la file est vide.
+	 */
+	@Override
+	public Chunk claim(int maxOperations) {
+		List<Chunk> parts = new ArrayList<>();
+		int count = 0;
+		double budget = getWorkBudget(maxOperations);
+		double work = 0;
+
+		while (count < maxOperations) {
+			Chunk chunk = chunks.pollFirst();
+			if (chunk == null) {
+				break;
+			}
+
+			if (journal != null && !parts.isEmpty() && !parts.get(parts.size() - 1).isFollowedBy(chunk)) {
+				// Un lot journalise doit correspondre a une seule plage de l'entree.
+				chunks.offerFirst(chunk);
+				break;
+			}
+
+			int taken = Math.min(chunk.size(), maxOperations - count);
+			if (costModel != null) {
+				// Prendre les operations tant que le travail estime reste dans le budget (au moins une par lot).
+				int fitting = 0;
+				while (fitting < taken) {
+					double cost = costModel.cost(chunk.getOpcode(fitting), chunk.getParameter(fitting));
+					if (count + fitting > 0 && work + cost > budget) {
+						break;
+					}
+					work += cost;
+					fitting++;
+				}
+				taken = fitting;
+			}
+
+			if (taken < chunk.size()) {
+				chunks.offerFirst(chunk.slice(taken, chunk.size()));
+				if (taken == 0) {
+					break;
+				}
+				chunk = chunk.slice(0, taken);
+			}
+
+			parts.add(chunk);
+			count += chunk.size();
+			if (work >= budget) {
+				break;
+			}
+		}
+
+		if (parts.isEmpty()) {
+			return null;
+		}
+
+		// La tranche reclamee est compacte: elle peut etre envoyee plusieurs fois sans copie.
+		Chunk batch = Chunk.concat(parts).compact();
+		// Avec un journal, chaque reclamation est une tranche distincte: une tranche remise dans la file
+		// et reclamee a nouveau n'est pas confondue avec le lot qui a echoue.
+		return (journal != null) ? batch.slice(0, batch.size()) : batch;
+	}
+
+	/**
+	 * Attend au plus timeout un changement de la file (ajout, remise ou fin du travail).
+	 */
+	@Override
+	public void awaitChange(long timeout, TimeUnit unit) throws InterruptedException {
+		synchronized (signal) {
+			if (!isDone()) {
+				TimeUnit.MILLISECONDS.timedWait(signal, Math.max(1, unit.toMillis(timeout)));
+			}
+		}
+	}
+
+	/**
+	 * Remet dans la file une tranche dont le calcul a echoue.
+	 */
+	@Override
+	public void requeue(Chunk chunk) {
+		requeues.increment();
+		chunks.offerLast(chunk);
+		signalAll();
+	}
+
+	/**
+	 * Remet dans la file une tranche confirmee dont le resultat s'est revele douteux. Le resultat
+	 * global est tenu par l'ordonnanceur; s'il a deja ete journalise, le resultat est retire du journal.
+	 */
+	@Override
+	public boolean reopen(Chunk chunk, int result) {
+		if (journal != null && !confirmedBatches.remove(chunk) && chunk.getPosition() >= 0) {
+			journal.retract(chunk.getPosition(), chunk.size(), result);
+		}
+		completedOperations.add(-chunk.size());
+		pendingOperations.addAndGet(chunk.size());
+		requeue(chunk);
+		return true;
+	}
+
+	/**
+	 * Confirme le calcul d'une tranche.
+	 */
+	@Override
+	public void complete(Chunk chunk) {
+		if (journal != null) {
+			confirmedBatches.add(chunk);
+		}
+		completedOperations.add(chunk.size());
+		if (pendingOperations.addAndGet(-chunk.size()) == 0) {
+			signalAll();
+		}
+	}
+
+	/**
+	 * Recoit le resultat d'un lot reclame une fois combine par l'ordonnanceur (0 si le lot
+	 * a ete remis dans la file). Le resultat global est tenu par l'ordonnanceur: seul le
+	 * resultat d'un lot confirme est journalise.
+	 */
+	@Override
+	public void onResult(Chunk batch, int result) {
+		if (journal != null && confirmedBatches.remove(batch) && batch.getPosition() >= 0) {
+			journal.append(batch.getPosition(), batch.size(), result);
+		}
+	}
+
+	@Override
+	public long getPendingOperations() {
+		return pendingOperations.get();
+	}
+
+	@Override
+	public long getCompletedOperations() {
+		return completedOperations.sum();
+	}
+
+	/**
+	 * Nombre de tranches remises dans la file apres un echec.
+	 */
+	@Override
+	public long getRequeues() {
+		return requeues.sum();
+	}
+
+	/**
+	 * Vrai si la file est fermee et que toutes les operations ont ete confirmees.
+	 */
+	@Override
+	public boolean isDone() {
+		return closed && pendingOperations.get() == 0;
+	}
+
+	/**
+	 * Travail estime d'un lot de maxOperations operations de cout moyen (infini sans modele de cout).
+	 */
+	private double getWorkBudget(int maxOperations) {
+		if (costModel == null) {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		double meanCost = costModel.meanCost(addedOperations.sum(), addedPellCalls.sum(), addedPrimeIterations.sum());
+		return (meanCost > 0) ? maxOperations * meanCost : Double.POSITIVE_INFINITY;
+	}
+
+	private void addWork(Chunk chunk) {
+		double pellCalls = 0;
+		double primeIterations = 0;
+		for (int i = 0; i < chunk.size(); i++) {
+			if (chunk.getOpcode(i) == Opcodes.PELL) {
+				pellCalls += CostModel.pellCalls(chunk.getParameter(i));
+			} else {
+				primeIterations += CostModel.primeIterations(chunk.getParameter(i));
+			}
+		}
+
+		addedOperations.add(chunk.size());
+		addedPellCalls.add(pellCalls);
+		addedPrimeIterations.add(primeIterations);
+	}
+
+	private void signalAll() {
+		synchronized (signal) {
+			signal.notifyAll();
+		}
+	}
+
+}
@@ -0,0 +1,150 @@
+package serveur;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import shared.ServerOverloadedException;
+
+/**
+ * Controle d'admission des lots sur le serveur.
+ * 
+ * Sans budget, un lot qui depasse la capacite est refuse avec une probabilite
+ * qui croit entre 1x et 5x la capacite (comportement d'origine). Avec un
+ * budget, le serveur accepte des lots tant que le nombre d'operations en cours
+ * reste sous le budget; au-dela, un nombre borne de lots peut attendre
+ * brievement dans une file, et les autres sont refuses.
+ * 
+ * Chaque refus indique au repartiteur le nombre d'operations en cours ou en
+ * attente et un delai avant de reessayer, estime a partir du debit mesure du
+ * serveur. Une taille de lot n'est suggeree que si le lot lui-meme etait trop
+ * grand: un serveur simplement occupe laisse le repartiteur reduire ses lots
+ * a son rythme.
+ */
+public class AdmissionController {
+
+	private static final String MESSAGE = "Erreur: Le serveur est surchargé. Redistribution des tâches.";
+	private static final long MAX_QUEUE_WAIT_MS = 100;
+	private static final double THROUGHPUT_SMOOTHING = 0.2;
+
+	private final int capacity;
+	private final int budget;
+	private final int maxQueued;
+	private final Semaphore permits;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger queuedOperations = new AtomicInteger();
+	private final AtomicInteger queuedBatches = new AtomicInteger();
+	private volatile double operationsPerMilli = 0;
+
+	/**
+	 * Controle d'origine: refus aleatoire au-dela de la capacite.
+	 */
+	public AdmissionController(int capacity) {
+		this.capacity = capacity;
+		this.budget = 0;
+		this.maxQueued = 0;
+		this.permits = null;
+	}
+
+	/**
+	 * Controle par budget d'operations en cours, avec une file d'au plus maxQueued lots.
+	 */
+	public AdmissionController(int capacity, int budget, int maxQueued) {
+		if (budget < 1) {
+			throw new IllegalArgumentException("Le budget d'admission doit etre positif.");
+		}
+
+		this.capacity = capacity;
+		this.budget = budget;
+		this.maxQueued = maxQueued;
+		this.permits = new Semaphore(budget, true);
+	}
+
+	/**
+	 * Admet un lot ou le refuse avec des indications pour le repartiteur.
+	 * Un lot admis doit ensuite etre libere avec {@link #release(int, long)}.
+	 */
+	public void admit(int nbOperations) throws ServerOverloadedException {
+		if (permits == null) {
+			checkRandomRefusal(nbOperations);
+		} else {
+			acquire(nbOperations);
+		}
+		inFlight.addAndGet(nbOperations);
+	}
+
+	/**
+	 * Libere un lot admis, calcule en elapsedNanos.
+	 */
+	public void release(int nbOperations, long elapsedNanos) {
+		inFlight.addAndGet(-nbOperations);
+		if (permits != null) {
+			permits.release(nbOperations);
+		}
+
+		double observed = nbOperations / Math.max(1e-3, elapsedNanos / 1e6);
+		double previous = operationsPerMilli;
+		operationsPerMilli = (previous == 0) ? observed : THROUGHPUT_SMOOTHING * observed + (1 - THROUGHPUT_SMOOTHING) * previous;
+	}
+
+	private void checkRandomRefusal(int nbOperations) throws ServerOverloadedException {
+		// Vérifier si le serveur est surchargé.
+		if (nbOperations > capacity) {
+			
+			// Le taux de refus est de 100% si le nombre d'opérations excède 5x la capacité du serveur.
+			if (nbOperations > 5 * capacity) {
+				throw overloaded(capacity);
+			} else {
+				double refusalRate = (double) (nbOperations - capacity) / (4 * capacity);
+				double randomNumber = Math.random();
+
+				if (randomNumber <= refusalRate) {
+					throw overloaded(capacity);
+				}
+			}
+		}
+	}
+
+	private void acquire(int nbOperations) throws ServerOverloadedException {
+		// Un lot plus grand que le budget ne pourra jamais etre admis.
+		if (nbOperations > budget) {
+			throw overloaded(budget);
+		}
+
+		if (permits.tryAcquire(nbOperations)) {
+			return;
+		}
+
+		// Attendre brievement dans la file si elle n'est pas pleine.
+		if (queuedBatches.incrementAndGet() <= maxQueued) {
+			queuedOperations.addAndGet(nbOperations);
+			try {
+				if (permits.tryAcquire(nbOperations, MAX_QUEUE_WAIT_MS, TimeUnit.MILLISECONDS)) {
+					return;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				queuedOperations.addAndGet(-nbOperations);
+				queuedBatches.decrementAndGet();
+			}
+		} else {
+			queuedBatches.decrementAndGet();
+		}
+
+		// Le lot aurait pu etre admis plus tard: le delai suffit, sans suggerer de taille.
+		throw overloaded(-1);
+	}
+
+	private ServerOverloadedException overloaded(int suggestedBatchSize) {
+		int queueDepth = inFlight.get() + queuedOperations.get();
+
+		// Delai estime pour ecouler le travail en cours au debit mesure.
+		double throughput = operationsPerMilli;
+		long retryAfterMillis = (throughput > 0 && permits != null) ? (long) Math.ceil(queueDepth / throughput) : 0;
+
+		return new ServerOverloadedException(MESSAGE, queueDepth, suggestedBatchSize, retryAfterMillis);
+	}
+
+}
@@ -0,0 +1,48 @@
+package serveur;
+
+import shared.Opcodes;
+
+/**
+ * Moteur qui garde les resultats d'un autre moteur dans un cache borne
+ * (voir {@link ResultCache}), d'un lot et d'une tache a l'autre.
+ *
+ * Utile avec le moteur de reference, dont chaque operation est couteuse.
+ * Le moteur rapide lit deja ses resultats dans des tables.
+ */
+public class CachingEngine implements OperationEngine {
+
+	private final OperationEngine engine;
+	private final ResultCache cache;
+
+	public CachingEngine(OperationEngine engine, ResultCache cache) {
+		this.engine = engine;
+		this.cache = cache;
+	}
+
+	@Override
+	public int pell(int x) {
+		long key = ResultCache.key(Opcodes.PELL, x);
+		long cached = cache.get(key);
+		if (cached != ResultCache.MISSING) {
+			return (int) cached;
+		}
+
+		int result = engine.pell(x);
+		cache.put(key, result);
+		return result;
+	}
+
+	@Override
+	public int prime(int x) {
+		long key = ResultCache.key(Opcodes.PRIME, x);
+		long cached = cache.get(key);
+		if (cached != ResultCache.MISSING) {
+			return (int) cached;
+		}
+
+		int result = engine.prime(x);
+		cache.put(key, result);
+		return result;
+	}
+
+}
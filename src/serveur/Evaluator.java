@@ -0,0 +1,161 @@
+package serveur;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import shared.Opcodes;
+
+/**
+ * Evalue un lot d'operations, en serie ou en parallele sur un ForkJoinPool.
+ * 
+ * En mode parallele, seules les valeurs des operations sont calculees en
+ * parallele. La reduction "% 4000" est ensuite faite dans l'ordre du lot: les
+ * valeurs de pell peuvent deborder (et devenir negatives), ce qui rend la
+ * combinaison de sommes partielles dependante de l'ordre. La reduction en
+ * serie garantit un resultat identique au mode serie pour un cout negligeable.
+ *
+ */
+public class Evaluator {
+
+	private final OperationEngine engine;
+	private final ForkJoinPool pool;
+	private final int parallelThreshold;
+
+	/**
+	 * Evaluateur en serie.
+	 */
+	public Evaluator(OperationEngine engine) {
+		this.engine = engine;
+		this.pool = null;
+		this.parallelThreshold = Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Evaluateur parallele. Les lots d'au moins parallelThreshold operations
+	 * sont repartis sur un pool dimensionne selon le nombre de coeurs.
+	 */
+	public Evaluator(OperationEngine engine, int parallelThreshold) {
+		if (parallelThreshold < 1) {
+			throw new IllegalArgumentException("Le seuil de parallelisme doit etre positif.");
+		}
+
+		this.engine = engine;
+		this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		this.parallelThreshold = parallelThreshold;
+	}
+
+	/**
+	 * Evalue un lot sous forme textuelle ("pell 24", "prime 5571", ...).
+	 */
+	public int evaluate(List<String> operations) {
+		int nbOperations = operations.size();
+		byte[] opcodes = new byte[nbOperations];
+		int[] parameters = new int[nbOperations];
+
+		for (int i = 0; i < nbOperations; i++) {
+			String[] op = operations.get(i).split(" ");
+			opcodes[i] = Opcodes.fromName(op[0]);
+			parameters[i] = Integer.valueOf(op[1]);
+		}
+
+		return evaluate(opcodes, parameters);
+	}
+
+	/**
+	 * Evalue un lot encode (voir {@link Opcodes}).
+	 */
+	public int evaluate(byte[] opcodes, int[] parameters) {
+		return evaluate(opcodes, parameters, null);
+	}
+
+	/**
+	 * Evalue un lot encode dont chaque operation est repetee counts[i] fois
+	 * (counts peut etre null si chaque operation compte une fois). Chaque
+	 * operation n'est calculee qu'une seule fois.
+	 */
+	public int evaluate(byte[] opcodes, int[] parameters, int[] counts) {
+		return evaluate(opcodes, parameters, counts, 0, opcodes.length);
+	}
+
+	/**
+	 * Evalue les operations [from, to) d'un lot encode, comme un lot a part entiere.
+	 */
+	public int evaluate(byte[] opcodes, int[] parameters, int[] counts, int from, int to) {
+		int nbOperations = to - from;
+
+		if (pool == null || nbOperations < parallelThreshold) {
+			int result = 0;
+			for (int i = from; i < to; i++) {
+				result += contribution(value(opcodes[i], parameters[i]), counts, i);
+				result %= 4000;
+			}
+			return result;
+		}
+
+		// values[i - from] recoit la valeur de l'operation i.
+		int[] values = new int[nbOperations];
+		int leafSize = Math.max(1, nbOperations / (4 * pool.getParallelism()));
+		pool.invoke(new ValuesTask(opcodes, parameters, values, from, from, to, leafSize));
+
+		int result = 0;
+		for (int i = from; i < to; i++) {
+			result += contribution(values[i - from], counts, i);
+			result %= 4000;
+		}
+		return result;
+	}
+
+	/**
+	 * Contribution d'une operation repetee: equivalente (modulo 4000) a l'ajouter counts[i] fois.
+	 */
+	private static int contribution(int value, int[] counts, int i) {
+		if (counts == null) {
+			return value;
+		}
+		return (int) ((long) (value % 4000) * counts[i] % 4000);
+	}
+
+	private int value(byte opcode, int parameter) {
+		return (opcode == Opcodes.PELL) ? engine.pell(parameter) : engine.prime(parameter);
+	}
+
+	private class ValuesTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final byte[] opcodes;
+		private final int[] parameters;
+		private final int[] values;
+		private final int base;
+		private final int from;
+		private final int to;
+		private final int leafSize;
+
+		ValuesTask(byte[] opcodes, int[] parameters, int[] values, int base, int from, int to, int leafSize) {
+			this.opcodes = opcodes;
+			this.parameters = parameters;
+			this.values = values;
+			this.base = base;
+			this.from = from;
+			this.to = to;
+			this.leafSize = leafSize;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= leafSize) {
+				for (int i = from; i < to; i++) {
+					values[i - base] = value(opcodes[i], parameters[i]);
+				}
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new ValuesTask(opcodes, parameters, values, base, from, middle, leafSize),
+					new ValuesTask(opcodes, parameters, values, base, middle, to, leafSize));
+		}
+
+	}
+
+}
@@ -0,0 +1,90 @@
+package serveur;
+
+/**
+ * Moteur de calcul rapide.
+ * 
+ * Les nombres de Pell sont precalcules dans une table (en arithmetique int, donc
+ * avec les memes debordements que l'implementation recursive) et le plus grand
+ * facteur premier est obtenu d'un crible construit une seule fois au demarrage.
+ * Les parametres hors des tables sont calcules iterativement.
+ *
+ */
+public class FastEngine implements OperationEngine {
+
+	public static final int DEFAULT_LIMIT = 1 << 16;
+
+	private final int[] pellTable;
+	private final int[] largestPrimeFactor;
+
+	public FastEngine() {
+		this(DEFAULT_LIMIT);
+	}
+
+	public FastEngine(int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("La limite des tables doit etre positive.");
+		}
+
+		pellTable = new int[limit + 1];
+		pellTable[1] = 1;
+		for (int i = 2; i <= limit; ++i) {
+			pellTable[i] = 2 * pellTable[i - 1] + pellTable[i - 2];
+		}
+
+		// Les premiers sont parcourus en ordre croissant: la derniere ecriture
+		// dans une case correspond donc a son plus grand facteur premier.
+		largestPrimeFactor = new int[limit + 1];
+		for (int i = 2; i <= limit; ++i) {
+			if (largestPrimeFactor[i] == 0) {
+				for (int j = i; j <= limit; j += i) {
+					largestPrimeFactor[j] = i;
+				}
+			}
+		}
+	}
+
+	@Override
+	public int pell(int x) {
+		if (x < 0) {
+			// Comportement identique a la reference (recursion infinie).
+			return Operations.pell(x);
+		}
+
+		int limit = pellTable.length - 1;
+		if (x <= limit) {
+			return pellTable[x];
+		}
+
+		int previous = pellTable[limit - 1];
+		int current = pellTable[limit];
+		for (int i = limit; i < x; ++i) {
+			int next = 2 * current + previous;
+			previous = current;
+			current = next;
+		}
+		return current;
+	}
+
+	@Override
+	public int prime(int x) {
+		if (x <= 1) {
+			return 0;
+		}
+
+		if (x < largestPrimeFactor.length) {
+			return largestPrimeFactor[x];
+		}
+
+		int highestPrime = 1;
+		int remainder = x;
+		for (int i = 2; i <= remainder / i; ++i) {
+			while (remainder % i == 0) {
+				highestPrime = i;
+				remainder /= i;
+			}
+		}
+
+		return (remainder > 1) ? remainder : highestPrime;
+	}
+
+}
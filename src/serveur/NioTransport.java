@@ -0,0 +1,273 @@
+package serveur;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import shared.NioProtocol;
+import shared.ServerInterface;
+import shared.ServerOverloadedException;
+
+/**
+ * Transport NIO du serveur, en alternative a Java RMI.
+ *
+ * Un seul fil gere toutes les connexions avec un selecteur: il lit les trames
+ * (voir NioProtocol) et confie chaque requete a un fil de calcul. Les reponses
+ * sont ecrites par le selecteur des qu'elles sont pretes, dans l'ordre ou les
+ * calculs se terminent. Un repartiteur peut donc avoir plusieurs lots en cours
+ * sur une meme connexion.
+ */
+public class NioTransport implements Runnable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	// Requetes calculees en meme temps au plus; les suivantes attendent leur tour.
+	private static final int MAX_WORKERS = 64;
+	// Pause des nouvelles connexions apres un echec d'acceptation (p. ex. trop de fichiers ouverts).
+	private static final long ACCEPT_RETRY_MS = 100;
+
+	private final ServerInterface server;
+	private final Selector selector;
+	private final ServerSocketChannel serverChannel;
+	private final SelectionKey acceptKey;
+	private final ExecutorService workers = Executors.newFixedThreadPool(MAX_WORKERS);
+
+	// Fin de la pause des nouvelles connexions (0: aucune pause; fil du selecteur seulement).
+	private long acceptResumeNanos = 0;
+
+	// Connexions ayant des reponses a ecrire.
+	private final Queue<Connection> pendingWrites = new ConcurrentLinkedQueue<>();
+
+	public NioTransport(ServerInterface server, int port) throws IOException {
+		this.server = server;
+		this.selector = Selector.open();
+		this.serverChannel = ServerSocketChannel.open();
+		this.serverChannel.bind(new InetSocketAddress(port));
+		this.serverChannel.configureBlocking(false);
+		this.acceptKey = this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public void start() {
+		new Thread(this, "nio-transport").start();
+	}
+
+	/**
+	 * Ferme le port et toutes les connexions: les requetes en cours echouent cote repartiteur.
+	 */
+	public void close() throws IOException {
+		serverChannel.close();
+		selector.wakeup();
+	}
+
+	@Override
+	public void run() {
+		while (serverChannel.isOpen()) {
+			try {
+				selector.select(acceptResumeNanos != 0 ? ACCEPT_RETRY_MS : 0);
+				resumeAccepting();
+
+				Connection connection;
+				while ((connection = pendingWrites.poll()) != null) {
+					connection.enableWrites();
+				}
+
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+
+					if (key.isValid() && key.isAcceptable()) {
+						accept();
+						continue;
+					}
+
+					try {
+						if (key.isReadable()) {
+							((Connection) key.attachment()).read();
+						}
+						if (key.isValid() && key.isWritable()) {
+							((Connection) key.attachment()).write();
+						}
+					} catch (IOException e) {
+						// Le repartiteur a ferme la connexion ou a ete tue.
+						key.cancel();
+						key.channel().close();
+					}
+				}
+			} catch (IOException e) {
+				System.err.println("Erreur: " + e.getMessage());
+			}
+		}
+
+		// Le port est ferme: fermer aussi les connexions ouvertes.
+		workers.shutdown();
+		try {
+			for (SelectionKey key : selector.keys()) {
+				key.channel().close();
+			}
+			selector.close();
+		} catch (IOException e) {
+			System.err.println("Erreur: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Accepte une connexion. Un echec ne ferme jamais le port d'ecoute: seule la connexion
+	 * en cause est fermee, et les nouvelles connexions sont suspendues un court moment si
+	 * l'acceptation elle-meme echoue (sans quoi le selecteur la signalerait sans arret).
+	 */
+	private void accept() {
+		SocketChannel channel;
+		try {
+			channel = serverChannel.accept();
+		} catch (IOException e) {
+			System.err.println("Erreur: " + e.getMessage());
+			acceptKey.interestOps(0);
+			acceptResumeNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ACCEPT_RETRY_MS);
+			return;
+		}
+		if (channel == null) {
+			return;
+		}
+
+		try {
+			channel.configureBlocking(false);
+			channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+			SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+			key.attach(new Connection(key, channel));
+		} catch (IOException e) {
+			System.err.println("Erreur: " + e.getMessage());
+			try {
+				channel.close();
+			} catch (IOException closeError) {
+				System.err.println("Erreur: " + closeError.getMessage());
+			}
+		}
+	}
+
+	private void resumeAccepting() {
+		if (acceptResumeNanos != 0 && System.nanoTime() - acceptResumeNanos >= 0 && acceptKey.isValid()) {
+			acceptKey.interestOps(SelectionKey.OP_ACCEPT);
+			acceptResumeNanos = 0;
+		}
+	}
+
+	/**
+	 * Execute une requete sur un fil de calcul et retourne la trame de reponse.
+	 */
+	private ByteBuffer handle(ByteBuffer frame) {
+		long requestId = frame.getLong();
+		byte type = frame.get();
+
+		try {
+			switch (type) {
+				case NioProtocol.AUTHENTICATE:
+					String username = NioProtocol.readString(frame);
+					String password = NioProtocol.readString(frame);
+					return NioProtocol.encodeResult(requestId, server.authenticate(username, password) ? 1 : 0);
+				case NioProtocol.CALCULATE:
+				case NioProtocol.CALCULATE_COUNTS:
+					int n = frame.getInt();
+					byte[] opcodes = NioProtocol.readBytes(frame, n);
+					int[] parameters = NioProtocol.readInts(frame, n);
+					int result = (type == NioProtocol.CALCULATE_COUNTS)
+							? server.calculate(opcodes, parameters, NioProtocol.readInts(frame, n))
+							: server.calculate(opcodes, parameters);
+					return NioProtocol.encodeResult(requestId, result);
+				default:
+					return NioProtocol.encodeError(requestId, "Type de requete inconnu: " + type);
+			}
+		} catch (ServerOverloadedException e) {
+			return NioProtocol.encodeOverloaded(requestId, e);
+		} catch (Exception e) {
+			return NioProtocol.encodeError(requestId, e.getMessage());
+		}
+	}
+
+	private class Connection {
+
+		private final SelectionKey key;
+		private final SocketChannel channel;
+		private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+		private ByteBuffer input = ByteBuffer.allocate(BUFFER_SIZE);
+
+		Connection(SelectionKey key, SocketChannel channel) {
+			this.key = key;
+			this.channel = channel;
+		}
+
+		void read() throws IOException {
+			if (channel.read(input) < 0) {
+				throw new ClosedChannelException();
+			}
+
+			input.flip();
+			while (input.remaining() >= Integer.BYTES) {
+				int length = input.getInt(input.position());
+				if (length < NioProtocol.HEADER_SIZE || length > NioProtocol.MAX_FRAME_SIZE) {
+					throw new IOException("Trame invalide de " + length + " octets.");
+				}
+
+				if (input.remaining() < Integer.BYTES + length) {
+					break;
+				}
+
+				// Copier la trame pour liberer le tampon de lecture avant la fin du calcul.
+				byte[] frame = new byte[length];
+				input.position(input.position() + Integer.BYTES);
+				input.get(frame);
+				workers.execute(() -> reply(handle(ByteBuffer.wrap(frame))));
+			}
+			input.compact();
+
+			// Agrandir le tampon pour une trame plus longue que sa capacite.
+			if (input.position() >= Integer.BYTES) {
+				int needed = Integer.BYTES + input.getInt(0);
+				if (needed > input.capacity()) {
+					ByteBuffer larger = ByteBuffer.allocate(needed);
+					input.flip();
+					larger.put(input);
+					input = larger;
+				}
+			}
+		}
+
+		void reply(ByteBuffer response) {
+			responses.add(response);
+			pendingWrites.add(this);
+			selector.wakeup();
+		}
+
+		void enableWrites() {
+			if (key.isValid()) {
+				key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+		}
+
+		void write() throws IOException {
+			ByteBuffer response;
+			while ((response = responses.peek()) != null) {
+				channel.write(response);
+				if (response.hasRemaining()) {
+					// Le tampon du socket est plein: reprendre quand il sera pret.
+					return;
+				}
+				responses.poll();
+			}
+			key.interestOps(SelectionKey.OP_READ);
+		}
+
+	}
+
+}
@@ -0,0 +1,16 @@
+package serveur;
+
+/**
+ * Moteur de calcul des operations supportees par le serveur.
+ * 
+ * Toute implementation doit retourner exactement les memes resultats que
+ * {@link Operations}, incluant les debordements d'entiers.
+ *
+ */
+public interface OperationEngine {
+
+	int pell(int x);
+
+	int prime(int x);
+
+}
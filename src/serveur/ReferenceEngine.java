@@ -0,0 +1,21 @@
+package serveur;
+
+/**
+ * Moteur de reference qui delegue directement a {@link Operations}.
+ * 
+ * Utile pour valider les resultats des autres moteurs.
+ *
+ */
+public class ReferenceEngine implements OperationEngine {
+
+	@Override
+	public int pell(int x) {
+		return Operations.pell(x);
+	}
+
+	@Override
+	public int prime(int x) {
+		return Operations.prime(x);
+	}
+
+}
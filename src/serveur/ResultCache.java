@@ -0,0 +1,299 @@
+package serveur;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache borne des resultats d'operations, partage par tous les lots du serveur.
+ *
+ * Les cles sont des long (code d'operation et parametre, voir {@link #key(byte, int)})
+ * et les valeurs des int, rangees dans des tableaux primitifs (adressage ouvert,
+ * sondage lineaire): aucun objet n'est cree par operation. La table est divisee
+ * en segments, chacun avec son verrou, pour que les fils de calcul se bloquent
+ * peu. Chaque segment garde au plus sa part du nombre maximal d'entrees.
+ *
+ * L'eviction suit l'algorithme de l'horloge: chaque entree a un compteur
+ * d'utilisation que l'aiguille decremente a son passage, et la premiere entree
+ * trouvee a zero est retiree.
+ *
+ *   LRU: le compteur vaut 1 apres chaque acces (approximation de LRU).
+ *   LFU: le compteur augmente a chaque acces, jusqu'a 15: les entrees souvent
+ *        utilisees survivent a plusieurs passages de l'aiguille.
+ *
+ * Le contenu peut etre sauvegarde dans un fichier et recharge au demarrage.
+ */
+public class ResultCache {
+
+	public enum Policy { LRU, LFU }
+
+	// Valeur retournee par get() pour une cle absente (aucun resultat int ne lui est egal).
+	public static final long MISSING = Long.MIN_VALUE;
+
+	private static final long EMPTY = Long.MIN_VALUE;
+	private static final int SEGMENTS = 16;
+	private static final int MAX_FREQUENCY = 15;
+	// "NCCH" en ASCII.
+	private static final int MAGIC = 0x4E434348;
+	private static final int VERSION = 1;
+
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final int maxFrequency;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param maxEntries nombre maximal d'entrees du cache.
+	 */
+	public ResultCache(int maxEntries, Policy policy) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("La taille du cache doit etre positive.");
+		}
+
+		this.maxFrequency = (policy == Policy.LFU) ? MAX_FREQUENCY : 1;
+		int segmentCapacity = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+		for (int i = 0; i < SEGMENTS; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * Cle d'une operation: le code dans les 32 bits de poids fort, le parametre dans les autres.
+	 */
+	public static long key(byte opcode, int parameter) {
+		return ((long) opcode << 32) | (parameter & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Resultat en cache de l'operation, ou {@link #MISSING}.
+	 */
+	public long get(long key) {
+		long hash = hash(key);
+		long value = segments[segmentIndex(hash)].get(key, (int) hash);
+		if (value == MISSING) {
+			misses.increment();
+		} else {
+			hits.increment();
+		}
+		return value;
+	}
+
+	public void put(long key, int value) {
+		long hash = hash(key);
+		segments[segmentIndex(hash)].put(key, (int) hash, value);
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Ecrit le contenu du cache dans un fichier temporaire, puis le renomme: un fichier
+	 * interrompu en cours d'ecriture ne remplace pas la sauvegarde precedente.
+	 *
+	 *   [code magique][version][entree: cle (long), valeur (int)]...
+	 */
+	public void save(File file) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			for (Segment segment : segments) {
+				// Le segment est copie sous son verrou, puis ecrit sans bloquer les fils de calcul.
+				long[] entries = segment.snapshot();
+				for (int i = 0; i < entries.length; i += 2) {
+					output.writeLong(entries[i]);
+					output.writeInt((int) entries[i + 1]);
+				}
+			}
+		} catch (IOException e) {
+			temporary.delete();
+			throw e;
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Ajoute au cache les entrees d'un fichier sauvegarde. Retourne le nombre d'entrees lues
+	 * (0 si le fichier n'existe pas). Une fin de fichier tronquee est ignoree.
+	 */
+	public int load(File file) throws IOException {
+		if (!file.exists()) {
+			return 0;
+		}
+
+		int loaded = 0;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+				throw new IOException("Le fichier " + file + " n'est pas une sauvegarde du cache.");
+			}
+			while (true) {
+				long key = input.readLong();
+				int value = input.readInt();
+				put(key, value);
+				loaded++;
+			}
+		} catch (EOFException e) {
+			return loaded;
+		}
+	}
+
+	private static long hash(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return hash ^ (hash >>> 29);
+	}
+
+	private static int segmentIndex(long hash) {
+		return (int) (hash >>> 32) & (SEGMENTS - 1);
+	}
+
+	private class Segment {
+
+		private final int capacity;
+		private final int mask;
+		private final long[] keys;
+		private final int[] values;
+		private final byte[] frequencies;
+		private int size = 0;
+		private int hand = 0;
+
+		Segment(int capacity) {
+			this.capacity = capacity;
+			// Au plus 3/4 des cases sont occupees: une recherche trouve toujours une case vide.
+			int length = Integer.highestOneBit(Math.max(4, capacity + capacity / 3) - 1) << 1;
+			this.mask = length - 1;
+			this.keys = new long[length];
+			this.values = new int[length];
+			this.frequencies = new byte[length];
+			Arrays.fill(keys, EMPTY);
+		}
+
+		synchronized long get(long key, int hash) {
+			int slot = find(key, hash);
+			if (keys[slot] == EMPTY) {
+				return MISSING;
+			}
+			touch(slot);
+			return values[slot];
+		}
+
+		synchronized void put(long key, int hash, int value) {
+			int slot = find(key, hash);
+			if (keys[slot] == EMPTY) {
+				if (size == capacity) {
+					evict();
+					slot = find(key, hash);
+				}
+				keys[slot] = key;
+				frequencies[slot] = 0;
+				size++;
+			}
+			values[slot] = value;
+			touch(slot);
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		/**
+		 * Copie des entrees du segment: cle, puis valeur, pour chaque entree.
+		 */
+		synchronized long[] snapshot() {
+			long[] entries = new long[2 * size];
+			int entry = 0;
+			for (int slot = 0; slot < keys.length; slot++) {
+				if (keys[slot] != EMPTY) {
+					entries[entry++] = keys[slot];
+					entries[entry++] = values[slot];
+				}
+			}
+			return entries;
+		}
+
+		/**
+		 * Case de la cle, ou case vide ou elle serait inseree.
+		 */
+		private int find(long key, int hash) {
+			int slot = hash & mask;
+			while (keys[slot] != EMPTY && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void touch(int slot) {
+			frequencies[slot] = (byte) Math.min(maxFrequency, frequencies[slot] + 1);
+		}
+
+		private void evict() {
+			while (true) {
+				if (keys[hand] != EMPTY) {
+					if (frequencies[hand] == 0) {
+						remove(hand);
+						evictions.increment();
+						return;
+					}
+					frequencies[hand]--;
+				}
+				hand = (hand + 1) & mask;
+			}
+		}
+
+		/**
+		 * Retire l'entree de la case et recule les entrees suivantes de la meme sequence de sondage.
+		 */
+		private void remove(int slot) {
+			size--;
+			int hole = slot;
+			int next = slot;
+			while (true) {
+				next = (next + 1) & mask;
+				if (keys[next] == EMPTY) {
+					break;
+				}
+
+				// Une entree peut combler le trou si sa case d'origine n'est pas entre le trou et elle.
+				int home = (int) hash(keys[next]) & mask;
+				boolean between = (hole <= next) ? (hole < home && home <= next) : (hole < home || home <= next);
+				if (!between) {
+					keys[hole] = keys[next];
+					values[hole] = values[next];
+					frequencies[hole] = frequencies[next];
+					hole = next;
+				}
+			}
+			keys[hole] = EMPTY;
+		}
+
+	}
+
+}
@@ -1,12 +1,17 @@
 package serveur;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.InetAddress;
 import java.rmi.*;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
 
 import javax.sound.sampled.Port;
 
@@ -14,27 +19,55 @@ import shared.*;
 
 public class Server implements ServerInterface {
 	
-	private static int PORT = 5000;
-	private static String serviceIP = "";
-	private static float MALICIOUS_RATE = 0;
-	private static int OPERATION_CAPACITY = 0;
+	private static final int SERVICE_PORT = 5000;
+	private static final long CACHE_SAVE_INTERVAL_MS = 30000;
+
+	// Configuration propre à chaque instance: plusieurs serveurs peuvent rouler dans le même processus.
+	private int PORT = 5000;
+	private final String serviceIP;
+	private final float MALICIOUS_RATE;
+	private final int OPERATION_CAPACITY;
+	private OperationEngine engine = new ReferenceEngine();
+	private int parallelThreshold = 0;
+	private int admissionBudget = 0;
+	private boolean nioTransport = false;
+	private File metricsFile = null;
+	private int cacheSize = 0;
+	private ResultCache.Policy cachePolicy = ResultCache.Policy.LRU;
+	private File cacheFile = null;
 
 	private boolean hasAuthenticatedDispatcher = false;
 
 	private ServiceInterface serviceStub;
+	private Evaluator evaluator;
+	private ResultCache cache;
+	private AdmissionController admissionController;
+	private NioTransport nioServer;
+	private final ServerMetrics metrics = new ServerMetrics();
+	private MetricsReporter metricsReporter;
+	private ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+	// Sauvegardes du cache, sur leur propre fil pour ne pas retarder les battements de coeur (null sans fichier).
+	private ScheduledExecutorService cacheSaver = null;
+	// Objet exposé aux répartiteurs: le serveur lui-même, ou une enveloppe (voir setEndpoint).
+	private ServerInterface endpoint = this;
+	private volatile boolean halted = false;
 
 	public static void main(String[] args) {
 		if (args.length > 0) {
-			OPERATION_CAPACITY = Integer.valueOf(args[0]);
+			int operationCapacity = Integer.valueOf(args[0]);
 
 			if (args.length > 1) {
-				MALICIOUS_RATE = Float.valueOf(args[1]);
+				float maliciousRate = Float.valueOf(args[1]);
 
-				if (MALICIOUS_RATE >= 0 && MALICIOUS_RATE <= 1) {
+				if (maliciousRate >= 0 && maliciousRate <= 1) {
 
 					if (args.length > 2) {
-						serviceIP = args[2];
-						Server server = new Server();
+						Server server = new Server(operationCapacity, maliciousRate, args[2]);
+
+						if (!server.readOptions(args, 3)) {
+							return;
+						}
+
 						server.run();
 					} else {
 						System.out.println("Erreur: Aucune adresse IP pour le service des noms.");
@@ -50,21 +83,124 @@ public class Server implements ServerInterface {
 		}
 	}
 
-	public Server() {
+	/**
+	 * Lit les options facultatives qui suivent les arguments positionnels.
+	 * 
+	 *   -f : utiliser le moteur de calcul rapide au lieu du moteur de reference.
+	 *   -p [seuil] : evaluer en parallele les lots d'au moins [seuil] operations.
+	 *   -b [budget] : controle d'admission par budget d'operations en cours (au lieu du refus aleatoire).
+	 *   -port [port] : port du serveur (5000 par defaut), pour rouler plusieurs instances sur un meme poste.
+	 *   -t [rmi|nio] : transport utilise par les repartiteurs (Java RMI par defaut).
+	 *   -m [fichier] : copier les mesures du serveur (aussi publiees par JMX) dans un fichier chaque seconde.
+	 *   -cache [entrees] : garder au plus [entrees] resultats d'operations d'un lot a l'autre.
+	 *   -cachepolicy [lru|lfu] : politique d'eviction du cache (lru par defaut).
+	 *   -cachefile [fichier] : charger le cache de ce fichier au demarrage et l'y sauvegarder periodiquement.
+	 */
+	public boolean readOptions(String[] args, int start) {
+		for (int i = start; i < args.length; i++) {
+			switch (args[i]) {
+				case "-f":
+					engine = new FastEngine();
+					break;
+				case "-p":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun seuil de parallelisme.");
+						return false;
+					}
+					parallelThreshold = Integer.valueOf(args[++i]);
+					if (parallelThreshold < 1) {
+						System.out.println("Erreur: Le seuil de parallelisme doit etre positif.");
+						return false;
+					}
+					break;
+				case "-port":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun port.");
+						return false;
+					}
+					PORT = Integer.valueOf(args[++i]);
+					break;
+				case "-b":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun budget d'admission.");
+						return false;
+					}
+					admissionBudget = Integer.valueOf(args[++i]);
+					if (admissionBudget < 1) {
+						System.out.println("Erreur: Le budget d'admission doit etre positif.");
+						return false;
+					}
+					break;
+				case "-t":
+					if (i + 1 >= args.length || !args[i + 1].matches("rmi|nio")) {
+						System.out.println("Erreur: Le transport doit etre rmi ou nio.");
+						return false;
+					}
+					nioTransport = args[++i].equals("nio");
+					break;
+				case "-m":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun fichier de mesures.");
+						return false;
+					}
+					metricsFile = new File(args[++i]);
+					break;
+				case "-cache":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucune taille de cache.");
+						return false;
+					}
+					cacheSize = Integer.valueOf(args[++i]);
+					if (cacheSize < 1) {
+						System.out.println("Erreur: La taille du cache doit etre positive.");
+						return false;
+					}
+					break;
+				case "-cachepolicy":
+					if (i + 1 >= args.length || !args[i + 1].matches("lru|lfu")) {
+						System.out.println("Erreur: La politique du cache doit etre lru ou lfu.");
+						return false;
+					}
+					cachePolicy = ResultCache.Policy.valueOf(args[++i].toUpperCase());
+					break;
+				case "-cachefile":
+					if (i + 1 >= args.length) {
+						System.out.println("Erreur: Aucun fichier de cache.");
+						return false;
+					}
+					cacheFile = new File(args[++i]);
+					break;
+				default:
+					System.out.println("Erreur: Argument pas reconnu: " + args[i]);
+					return false;
+			}
+		}
+		if (cacheFile != null && cacheSize == 0) {
+			System.out.println("Erreur: L'option -cachefile demande l'option -cache.");
+			return false;
+		}
+		return true;
+	}
+
+	public Server(int operationCapacity, float maliciousRate, String serviceIP) {
 		super();
-		serviceStub = loadServiceStub(serviceIP);
+		this.OPERATION_CAPACITY = operationCapacity;
+		this.MALICIOUS_RATE = maliciousRate;
+		this.serviceIP = serviceIP;
+	}
 
-		try {
-			serviceStub.signUpServer(OPERATION_CAPACITY, PORT);
-		} catch (Exception e) {
-			System.err.println("Erreur: " + e.getMessage());
-		}
+	/**
+	 * Expose aux répartiteurs un autre objet que le serveur, qui lui délègue les appels
+	 * (p. ex. le simulateur, qui y injecte des latences et des pannes). À appeler avant run().
+	 */
+	public void setEndpoint(ServerInterface endpoint) {
+		this.endpoint = endpoint;
 	}
 
 	private ServiceInterface loadServiceStub(String hostname) {
 		ServiceInterface stub = null;
 		try {
-			Registry registry = LocateRegistry.getRegistry(hostname, PORT);
+			Registry registry = LocateRegistry.getRegistry(hostname, SERVICE_PORT);
 			stub = (ServiceInterface) registry.lookup("service");
 		} catch (NotBoundException e) {
 			System.out.println("Erreur: Le nom '" + e.getMessage() + "' n'est pas défini dans le registre.");
@@ -76,15 +212,61 @@ public class Server implements ServerInterface {
 		return stub;
 	}
 
-	private void run() {
+	public void run() {
 		if (System.getSecurityManager() == null) {
 			System.setSecurityManager(new SecurityManager());
 		}
 
+		if (cacheSize > 0) {
+			cache = new ResultCache(cacheSize, cachePolicy);
+			loadCache();
+			engine = new CachingEngine(engine, cache);
+			metrics.setCache(cache);
+		}
+
+		evaluator = (parallelThreshold > 0) ? new Evaluator(engine, parallelThreshold) : new Evaluator(engine);
+		admissionController = (admissionBudget > 0)
+				? new AdmissionController(OPERATION_CAPACITY, admissionBudget, Runtime.getRuntime().availableProcessors())
+				: new AdmissionController(OPERATION_CAPACITY);
+		serviceStub = loadServiceStub(serviceIP);
+
+		// Les mesures sont publiées par JMX sous un nom propre à l'instance.
+		String metricsName = "serveur:type=Server,port=" + PORT;
+		MetricsReporter.register(metrics, metricsName);
+
 		try {
-			ServerInterface stub = (ServerInterface) UnicastRemoteObject.exportObject(this, PORT);
-			Registry registry = LocateRegistry.createRegistry(PORT);
-			registry.rebind("server", stub);
+			if (metricsFile != null) {
+				metricsReporter = new MetricsReporter(metricsFile, metricsName);
+				metricsReporter.start();
+			}
+
+			if (nioTransport) {
+				// Les répartiteurs se connectent directement au port du serveur, sans registre.
+				nioServer = new NioTransport(endpoint, PORT);
+				nioServer.start();
+			} else {
+				ServerInterface stub = (ServerInterface) UnicastRemoteObject.exportObject(endpoint, PORT);
+				Registry registry = LocateRegistry.createRegistry(PORT);
+				registry.rebind(ServerConfig.registryName(PORT), stub);
+			}
+
+			// S'inscrire auprès du service des noms une fois le stub accessible dans le registre.
+			serviceStub.signUpServer(OPERATION_CAPACITY, PORT);
+
+			// Signaler périodiquement au service des noms que le serveur est toujours actif.
+			heartbeat.scheduleAtFixedRate(this::sendHeartbeat, ServiceInterface.HEARTBEAT_INTERVAL_MS,
+					ServiceInterface.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+			if (cacheFile != null) {
+				// Sauvegarder le cache périodiquement et à l'arrêt, pour qu'un serveur relancé soit rapide dès le départ.
+				cacheSaver = Executors.newSingleThreadScheduledExecutor();
+				cacheSaver.scheduleWithFixedDelay(this::saveCache, CACHE_SAVE_INTERVAL_MS, CACHE_SAVE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+					if (!halted) {
+						saveCache();
+					}
+				}));
+			}
 			System.out.println("Server ready.");
 		} catch (ConnectException e) {
 			System.err.println("Impossible de se connecter au registre RMI. Est-ce que rmiregistry est lancé ?");
@@ -95,6 +277,64 @@ public class Server implements ServerInterface {
 		}
 	}
 
+	/**
+	 * Arrête brutalement le serveur, comme une panne: il cesse de répondre aux répartiteurs et au
+	 * service des noms, sans sauvegarder son cache.
+	 */
+	public void halt() {
+		halted = true;
+		heartbeat.shutdownNow();
+		if (cacheSaver != null) {
+			cacheSaver.shutdownNow();
+		}
+		if (metricsReporter != null) {
+			metricsReporter.stop();
+		}
+
+		try {
+			if (nioServer != null) {
+				nioServer.close();
+			} else {
+				UnicastRemoteObject.unexportObject(endpoint, true);
+			}
+		} catch (Exception e) {
+			System.err.println("Erreur: " + e.getMessage());
+		}
+		System.out.println("Server halted.");
+	}
+
+	private void loadCache() {
+		if (cacheFile == null) {
+			return;
+		}
+
+		try {
+			System.out.println("Cache: " + cache.load(cacheFile) + " résultats chargés.");
+		} catch (IOException e) {
+			System.err.println("Erreur: " + e.getMessage());
+		}
+	}
+
+	private void saveCache() {
+		try {
+			cache.save(cacheFile);
+		} catch (IOException e) {
+			System.err.println("Erreur: " + e.getMessage());
+		}
+	}
+
+	private void sendHeartbeat() {
+		try {
+			// Le battement de coeur porte la charge du serveur.
+			// Le service ne connaît plus le serveur (p. ex. après un redémarrage): s'inscrire à nouveau.
+			if (!serviceStub.reportLoad(PORT, metrics.sampleLoad())) {
+				serviceStub.signUpServer(OPERATION_CAPACITY, PORT);
+			}
+		} catch (Exception e) {
+			System.err.println("Erreur: " + e.getMessage());
+		}
+	}
+
 	@Override
     public boolean authenticate(String username, String password) throws RemoteException {
         return this.serviceStub.authenticate(username, password);
@@ -102,38 +342,94 @@ public class Server implements ServerInterface {
 
 	@Override
 	public int calculate(List<String> operations) throws ServerOverloadedException, RemoteException {
-		// Vérifier si le serveur est surchargé.
-		int nbOperations = operations.size();
-		if (nbOperations > OPERATION_CAPACITY) {
-			
-			// Le taux de refus est de 100% si le nombre d'opérations excède 5x la capacité du serveur.
-			if (nbOperations > 5 * OPERATION_CAPACITY) {
-				throw new ServerOverloadedException("Erreur: Le serveur est surchargé. Redistribution des tâches.");
-			} else {
-				double refusalRate = (nbOperations - OPERATION_CAPACITY) / (4 * OPERATION_CAPACITY);
-				double randomNumber = Math.random();
+		return execute(operations.size(), () -> evaluator.evaluate(operations));
+	}
 
-				if (randomNumber <= refusalRate) {
-					throw new ServerOverloadedException("Erreur: Le serveur est surchargé. Redistribution des tâches.");
+	@Override
+	public int calculate(byte[] opcodes, int[] parameters) throws ServerOverloadedException, RemoteException {
+		checkLengths(opcodes, parameters, null);
+		return execute(opcodes.length, () -> evaluator.evaluate(opcodes, parameters));
+	}
+
+	@Override
+	public int calculate(byte[] opcodes, int[] parameters, int[] counts) throws ServerOverloadedException, RemoteException {
+		checkLengths(opcodes, parameters, counts);
+		// Chaque opération unique n'est calculée qu'une fois, peu importe sa multiplicité.
+		return execute(opcodes.length, () -> evaluator.evaluate(opcodes, parameters, counts));
+	}
+
+	@Override
+	public int[] calculateBlocks(byte[] opcodes, int[] parameters, int[] counts, int blockSize)
+			throws ServerOverloadedException, RemoteException {
+		if (blockSize < 1) {
+			throw new RemoteException("La taille des blocs doit etre positive.");
+		}
+		checkLengths(opcodes, parameters, counts);
+
+		admit(opcodes.length);
+
+		long start = System.nanoTime();
+		// Un appel est malicieux avec la même probabilité qu'un lot; le résultat d'un de ses blocs est alors faux.
+		boolean malicious = Math.random() <= MALICIOUS_RATE;
+		try {
+			int[] results = new int[(opcodes.length + blockSize - 1) / blockSize];
+			int wrongBlock = malicious ? (int)(Math.random() * results.length) : -1;
+			for (int block = 0; block < results.length; block++) {
+				if (block != wrongBlock) {
+					int from = block * blockSize;
+					results[block] = evaluator.evaluate(opcodes, parameters, counts, from, Math.min(opcodes.length, from + blockSize));
+				} else {
+					results[block] = (int)(Math.random() * 1234);
 				}
 			}
+			return results;
+		} finally {
+			long elapsedNanos = System.nanoTime() - start;
+			admissionController.release(opcodes.length, elapsedNanos);
+			metrics.onComplete(opcodes.length, elapsedNanos, malicious);
+		}
+	}
+
+	/**
+	 * Refuse un lot dont les tableaux n'ont pas tous la même longueur (counts peut être null).
+	 */
+	private static void checkLengths(byte[] opcodes, int[] parameters, int[] counts) throws RemoteException {
+		if (parameters.length != opcodes.length || (counts != null && counts.length != opcodes.length)) {
+			throw new RemoteException("Les tableaux d'une tranche doivent avoir la meme longueur.");
 		}
+	}
 
-		int result = 0;
+	private int execute(int nbOperations, IntSupplier evaluation) throws ServerOverloadedException, RemoteException {
+		admit(nbOperations);
 
-		if (Math.random() > MALICIOUS_RATE) {
-			for (String operation : operations) {
-				String[] op = operation.split(" ");
-				String name = op[0];
-				int parameter = Integer.valueOf(op[1]);
-	
-				result += (name.equals("pell")) ? Operations.pell(parameter) : Operations.prime(parameter);
-				result %= 4000;
+		long start = System.nanoTime();
+		boolean malicious = false;
+		try {
+			if (Math.random() > MALICIOUS_RATE) {
+				return evaluation.getAsInt();
+			} else {
+				malicious = true;
+				return (int)(Math.random() * 1234);
 			}
-			return result;
-		} else {
-			return (int)(Math.random() * 1234);
+		} finally {
+			long elapsedNanos = System.nanoTime() - start;
+			admissionController.release(nbOperations, elapsedNanos);
+			metrics.onComplete(nbOperations, elapsedNanos, malicious);
+		}
+	}
+
+	/**
+	 * Réserve la capacité du lot (ou le refuse).
+	 */
+	private void admit(int nbOperations) throws ServerOverloadedException, RemoteException {
+		// Vérifier si le serveur est surchargé.
+		try {
+			admissionController.admit(nbOperations);
+		} catch (ServerOverloadedException e) {
+			metrics.onRefusal();
+			throw e;
 		}
+		metrics.onStart(nbOperations);
 	}
 
 }
@@ -0,0 +1,191 @@
+package serveur;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import shared.LatencyHistogram;
+import shared.ServerLoad;
+
+/**
+ * Compteurs d'un serveur: lots calcules ou refuses, resultats malicieux,
+ * lots en cours et temps d'activite. Les compteurs sont repartis (LongAdder)
+ * pour que les fils de calcul ne se ralentissent pas les uns les autres; seul
+ * le temps d'activite prend un court verrou, au debut et a la fin d'un lot.
+ */
+public class ServerMetrics implements ServerMetricsMBean {
+
+	// Poids de la derniere mesure dans la capacite effective lissee.
+	private static final double SMOOTHING = 0.3;
+
+	private final long startNanos = System.nanoTime();
+	private final LongAdder batches = new LongAdder();
+	private final LongAdder operations = new LongAdder();
+	private final LongAdder refusals = new LongAdder();
+	private final LongAdder maliciousResults = new LongAdder();
+	private final AtomicInteger inFlightBatches = new AtomicInteger();
+	private final AtomicInteger inFlightOperations = new AtomicInteger();
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private volatile ResultCache cache;
+
+	// Temps d'activite du serveur: au moins un lot en cours (acces synchronise sur busyLock).
+	private final Object busyLock = new Object();
+	private int busyBatches = 0;
+	private long busySinceNanos = 0;
+	private long busyNanos = 0;
+
+	// Etat du dernier rapport de charge (voir sampleLoad).
+	private long lastSampleNanos = startNanos;
+	private long lastOperations = 0;
+	private long lastBusyNanos = 0;
+	private double effectiveOperationsPerSecond = 0;
+
+	void setCache(ResultCache cache) {
+		this.cache = cache;
+	}
+
+	void onStart(int nbOperations) {
+		inFlightBatches.incrementAndGet();
+		inFlightOperations.addAndGet(nbOperations);
+		synchronized (busyLock) {
+			if (busyBatches++ == 0) {
+				busySinceNanos = System.nanoTime();
+			}
+		}
+	}
+
+	void onRefusal() {
+		refusals.increment();
+	}
+
+	void onComplete(int nbOperations, long elapsedNanos, boolean malicious) {
+		inFlightBatches.decrementAndGet();
+		inFlightOperations.addAndGet(-nbOperations);
+		synchronized (busyLock) {
+			if (--busyBatches == 0) {
+				busyNanos += System.nanoTime() - busySinceNanos;
+			}
+		}
+		batches.increment();
+		operations.add(nbOperations);
+		latency.record(elapsedNanos);
+		if (malicious) {
+			maliciousResults.increment();
+		}
+	}
+
+	/**
+	 * Rapport de charge depuis le rapport precedent: debit recent et capacite effective, soit les
+	 * operations terminees par seconde d'activite, lissee d'un rapport a l'autre. La capacite tient
+	 * compte de tous les fils de calcul, qu'un lot les occupe tous (evaluation parallele) ou que
+	 * plusieurs lots soient calcules a la fois. Un intervalle sans lot termine garde la capacite precedente.
+	 */
+	synchronized ServerLoad sampleLoad() {
+		long now = System.nanoTime();
+		long completed = operations.sum();
+		long busy;
+		synchronized (busyLock) {
+			busy = busyNanos + ((busyBatches > 0) ? now - busySinceNanos : 0);
+		}
+		long windowOperations = completed - lastOperations;
+		long windowBusyNanos = busy - lastBusyNanos;
+
+		double recentOperationsPerSecond = windowOperations / Math.max(1e-9, (now - lastSampleNanos) / 1e9);
+		if (windowOperations > 0 && windowBusyNanos > 0) {
+			double measured = windowOperations / (windowBusyNanos / 1e9);
+			effectiveOperationsPerSecond = (effectiveOperationsPerSecond == 0)
+					? measured
+					: (1 - SMOOTHING) * effectiveOperationsPerSecond + SMOOTHING * measured;
+		}
+
+		lastSampleNanos = now;
+		lastOperations = completed;
+		lastBusyNanos = busy;
+		return new ServerLoad(inFlightOperations.get(), recentOperationsPerSecond, Runtime.getRuntime().availableProcessors(),
+				effectiveOperationsPerSecond);
+	}
+
+	@Override
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	@Override
+	public long getOperations() {
+		return operations.sum();
+	}
+
+	@Override
+	public long getRefusals() {
+		return refusals.sum();
+	}
+
+	@Override
+	public double getRefusalRate() {
+		long refused = refusals.sum();
+		long total = refused + batches.sum();
+		return (total == 0) ? 0 : (double) refused / total;
+	}
+
+	@Override
+	public long getMaliciousResults() {
+		return maliciousResults.sum();
+	}
+
+	@Override
+	public int getInFlightBatches() {
+		return inFlightBatches.get();
+	}
+
+	@Override
+	public int getInFlightOperations() {
+		return inFlightOperations.get();
+	}
+
+	@Override
+	public double getOperationsPerSecond() {
+		return operations.sum() / Math.max(1e-9, (System.nanoTime() - startNanos) / 1e9);
+	}
+
+	@Override
+	public double getLatencyMeanMillis() {
+		return latency.getMeanMillis();
+	}
+
+	@Override
+	public double getLatencyP50Millis() {
+		return latency.getPercentileMillis(0.5);
+	}
+
+	@Override
+	public double getLatencyP99Millis() {
+		return latency.getPercentileMillis(0.99);
+	}
+
+	@Override
+	public long getCacheHits() {
+		return (cache == null) ? 0 : cache.getHits();
+	}
+
+	@Override
+	public long getCacheMisses() {
+		return (cache == null) ? 0 : cache.getMisses();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		long hits = getCacheHits();
+		long total = hits + getCacheMisses();
+		return (total == 0) ? 0 : (double) hits / total;
+	}
+
+	@Override
+	public long getCacheEvictions() {
+		return (cache == null) ? 0 : cache.getEvictions();
+	}
+
+	@Override
+	public int getCacheSize() {
+		return (cache == null) ? 0 : cache.size();
+	}
+
+}
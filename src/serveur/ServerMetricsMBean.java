@@ -0,0 +1,43 @@
+package serveur;
+
+/**
+ * Mesures d'un serveur de calcul, publiees par JMX.
+ */
+public interface ServerMetricsMBean {
+
+	long getBatches();
+
+	long getOperations();
+
+	long getRefusals();
+
+	double getRefusalRate();
+
+	long getMaliciousResults();
+
+	int getInFlightBatches();
+
+	int getInFlightOperations();
+
+	double getOperationsPerSecond();
+
+	double getLatencyMeanMillis();
+
+	double getLatencyP50Millis();
+
+	double getLatencyP99Millis();
+
+	long getCacheHits();
+
+	long getCacheMisses();
+
+	double getCacheHitRate();
+
+	long getCacheEvictions();
+
+	/**
+	 * Nombre de resultats dans le cache (0 sans l'option -cache).
+	 */
+	int getCacheSize();
+
+}
@@ -10,14 +10,24 @@ import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.rmi.server.RemoteServer;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import shared.*;
 
 public class Service implements ServiceInterface {
 
     private static int PORT = 5000;
+    private static final int MAX_CHANGES = 1000;
 
-    private List<ServerConfig> servers = new ArrayList<>();
+    // Serveurs actifs et l'heure de leur dernier battement de coeur (accès synchronisé sur this).
+    private Map<ServerConfig, Long> servers = new LinkedHashMap<>();
+    // Dernier rapport de charge de chaque serveur actif (accès synchronisé sur this).
+    private Map<ServerConfig, ServerLoad> loads = new HashMap<>();
+    private Deque<Change> changes = new ArrayDeque<>();
+    private long version = 0;
+    private ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor();
     private String repartiteurUsername = "";
     private String repartiteurPassword = "";
 
@@ -39,6 +49,9 @@ public class Service implements ServiceInterface {
             ServiceInterface stub = (ServiceInterface) UnicastRemoteObject.exportObject(this, PORT);
             Registry registry = LocateRegistry.createRegistry(PORT);
             registry.rebind("service", stub);
+
+            // Retirer périodiquement les serveurs qui n'envoient plus de battements de coeur.
+            reaper.scheduleAtFixedRate(this::removeDeadServers, HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
             System.out.println("Service ready.");
         } catch (ConnectException e) {
             System.err.println("Impossible de se connecter au registre RMI. Est-ce que rmiregistry est lancé ?");
@@ -63,23 +76,130 @@ public class Service implements ServiceInterface {
     }
 
     @Override
-	public void signUpServer(int operationCapacity, int port) throws RemoteException {
+	public synchronized void signUpServer(int operationCapacity, int port) throws RemoteException {
         try {
             String hostname = RemoteServer.getClientHost();
-            this.servers.add(new ServerConfig(hostname, operationCapacity, port));
+            ServerConfig serverConfig = new ServerConfig(hostname, operationCapacity, port);
+
+            // Un serveur qui s'inscrit à nouveau (redémarrage, nouvelle capacité) remplace sa configuration
+            // précédente: le retrait puis l'ajout indiquent aux répartiteurs de se reconnecter à lui.
+            Long previous = this.servers.remove(serverConfig);
+            this.servers.put(serverConfig, System.currentTimeMillis());
+            if (previous != null) {
+                this.loads.remove(serverConfig);
+                this.recordChange(serverConfig, false);
+            }
+            this.recordChange(serverConfig, true);
         } catch (Exception e) {
             System.err.println("Erreur: " + e.getMessage());
         }
     }
 
+    @Override
+    public synchronized boolean reportLoad(int port, ServerLoad load) throws RemoteException {
+        try {
+            ServerConfig serverConfig = new ServerConfig(RemoteServer.getClientHost(), 0, port);
+
+            // Retourner faux si le serveur est inconnu (p. ex. retiré après un silence): il doit s'inscrire à nouveau.
+            if (this.servers.replace(serverConfig, System.currentTimeMillis()) == null) {
+                return false;
+            }
+            this.loads.put(serverConfig, load);
+            return true;
+        } catch (Exception e) {
+            System.err.println("Erreur: " + e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized List<ServerLoad> getServerLoads() throws RemoteException {
+        List<ServerLoad> ranked = new ArrayList<>();
+        for (ServerConfig serverConfig : this.servers.keySet()) {
+            ServerLoad load = this.loads.get(serverConfig);
+            if (load != null) {
+                ranked.add(load.forServer(serverConfig));
+            }
+        }
+        ranked.sort(Comparator.comparingDouble(ServerLoad::getExpectedWaitSeconds));
+        return ranked;
+    }
+
     @Override
     public boolean authenticate(String username, String password) throws RemoteException {
         return (this.repartiteurUsername.equals(username) && this.repartiteurPassword.equals(password));
     }
 
     @Override
-    public List<ServerConfig> getServers() throws RemoteException {
-        return this.servers;
+    public synchronized List<ServerConfig> getServers() throws RemoteException {
+        return new ArrayList<>(this.servers.keySet());
+    }
+
+    @Override
+    public synchronized ServerChanges getServerChanges(long sinceVersion) throws RemoteException {
+        // Si la version est négative ou si les changements demandés ne sont plus conservés,
+        // retourner la liste complète.
+        if (sinceVersion < 0 || sinceVersion > this.version || (!this.changes.isEmpty() && sinceVersion < this.changes.peekFirst().version - 1)) {
+            return new ServerChanges(this.version, true, new ArrayList<>(this.servers.keySet()), new ArrayList<>());
+        }
+
+        // Un serveur retiré puis ajouté reste dans les deux listes: le répartiteur retire l'ancien serveur
+        // avant d'ajouter le nouveau. Un serveur ajouté puis retiré n'apparaît que dans les retraits.
+        List<ServerConfig> added = new ArrayList<>();
+        List<ServerConfig> removed = new ArrayList<>();
+        for (Change change : this.changes) {
+            if (change.version > sinceVersion) {
+                if (change.added) {
+                    if (!added.contains(change.serverConfig)) {
+                        added.add(change.serverConfig);
+                    }
+                } else {
+                    added.remove(change.serverConfig);
+                    if (!removed.contains(change.serverConfig)) {
+                        removed.add(change.serverConfig);
+                    }
+                }
+            }
+        }
+
+        return new ServerChanges(this.version, false, added, removed);
+    }
+
+    private synchronized void removeDeadServers() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<ServerConfig, Long>> iterator = this.servers.entrySet().iterator();
+
+        while (iterator.hasNext()) {
+            Map.Entry<ServerConfig, Long> server = iterator.next();
+            if (now - server.getValue() > HEARTBEAT_TIMEOUT_MS) {
+                iterator.remove();
+                this.loads.remove(server.getKey());
+                this.recordChange(server.getKey(), false);
+                System.out.println("Serveur retiré (aucun battement de coeur): " + server.getKey());
+            }
+        }
+    }
+
+    private void recordChange(ServerConfig serverConfig, boolean added) {
+        this.version++;
+        this.changes.addLast(new Change(this.version, serverConfig, added));
+        if (this.changes.size() > MAX_CHANGES) {
+            this.changes.removeFirst();
+        }
+    }
+
+    private static class Change {
+
+        private final long version;
+        private final ServerConfig serverConfig;
+        private final boolean added;
+
+        Change(long version, ServerConfig serverConfig, boolean added) {
+            this.version = version;
+            this.serverConfig = serverConfig;
+            this.added = added;
+        }
+
     }
 
 }
@@ -0,0 +1,46 @@
+package shared;
+
+import java.rmi.Remote;
+import java.rmi.RemoteException;
+
+/**
+ * Repartiteur en mode demon: il accepte des taches de plusieurs clients et
+ * partage entre elles ses serveurs authentifies. Les operations d'une tache
+ * sont envoyees par tranches, puis la tache est fermee et son resultat attendu.
+ */
+public interface DispatcherInterface extends Remote {
+	// Port du registre du demon et nom sous lequel il y est publie.
+	int PORT = 5100;
+	String REGISTRY_NAME = "repartiteur";
+	// Une tache dont le client n'a fait aucun appel depuis ce delai est oubliee par le demon.
+	long JOB_LEASE_MS = 30000;
+
+	/**
+	 * Cree une tache. Les taches avec une echeance (en ms, 0 si aucune) passent avant
+	 * les autres, la plus proche d'abord; les autres se partagent les serveurs selon leur poids.
+	 */
+	long createJob(int weight, long deadlineMillis) throws RemoteException;
+
+	/**
+	 * Ajoute des operations a la tache. Les multiplicites sont facultatives (null).
+	 * L'appel bloque tant que la tache a trop d'operations en attente.
+	 */
+	void addOperations(long jobId, byte[] opcodes, int[] parameters, int[] counts) throws RemoteException;
+
+	/**
+	 * Indique qu'aucune operation ne sera plus ajoutee a la tache.
+	 */
+	void closeJob(long jobId) throws RemoteException;
+
+	/**
+	 * Prolonge le bail de la tache (voir JOB_LEASE_MS), par exemple pendant une longue
+	 * attente de nouvelles operations.
+	 */
+	void renewJob(long jobId) throws RemoteException;
+
+	/**
+	 * Attend au plus timeoutMillis le resultat de la tache fermee. Retourne null si elle
+	 * n'est pas terminee; une fois retourne, le resultat est oublie par le demon.
+	 */
+	Integer awaitResult(long jobId, long timeoutMillis) throws RemoteException;
+}
@@ -0,0 +1,85 @@
+package shared;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogramme de latences a faible cout, partage entre plusieurs fils.
+ *
+ * Chaque puissance de deux (en nanosecondes) est divisee en 8 cases, ce qui
+ * donne une precision relative d'environ 12%. Les cases sont des compteurs
+ * repartis (LongAdder): un enregistrement ne prend aucun verrou et les fils
+ * qui enregistrent en meme temps ne se disputent pas une meme ligne de cache.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int NB_BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[NB_BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[index(value)].increment();
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return (n == 0) ? 0 : totalNanos.sum() / 1e6 / n;
+    }
+
+    /**
+     * Latence (ms) sous laquelle se trouve la fraction p des mesures, a la precision d'une case.
+     */
+    public double getPercentileMillis(double p) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < NB_BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= rank) {
+                return upperBound(i) / 1e6;
+            }
+        }
+        return upperBound(NB_BUCKETS - 1) / 1e6;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+}
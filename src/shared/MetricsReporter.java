@@ -0,0 +1,105 @@
+package shared;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publication des mesures par JMX et copie periodique dans un fichier.
+ *
+ * Les mesures sont des MBeans standards (consultables avec jconsole ou
+ * VisualVM). La copie ajoute au fichier, a chaque periode, une ligne par
+ * MBean correspondant au patron donne: "[temps ms] [nom] attribut=valeur ...".
+ */
+public class MetricsReporter {
+
+    public static final long DUMP_INTERVAL_MS = 1000;
+
+    private final File file;
+    private final ObjectName pattern;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MetricsReporter(File file, String pattern) throws IOException {
+        this.file = file;
+        try {
+            this.pattern = new ObjectName(pattern);
+        } catch (Exception e) {
+            throw new IOException("Nom JMX invalide: " + pattern, e);
+        }
+    }
+
+    /**
+     * Enregistre un MBean sous le nom donne, en remplacant celui qui porterait deja ce nom.
+     */
+    public static void register(Object mbean, String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(mbean, objectName);
+        } catch (Exception e) {
+            System.err.println("Erreur: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Nom JMX d'une valeur libre (p. ex. "host:port"), les caracteres speciaux etant echappes au besoin.
+     */
+    public static String quote(String value) {
+        return ObjectName.quote(value);
+    }
+
+    public void start() {
+        scheduler.scheduleAtFixedRate(this::dump, DUMP_INTERVAL_MS, DUMP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Arrete la copie periodique apres une derniere copie des mesures.
+     */
+    public void stop() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(DUMP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dump();
+    }
+
+    private synchronized void dump() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        long now = System.currentTimeMillis();
+
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+            for (ObjectName name : new TreeSet<>(server.queryNames(pattern, null))) {
+                StringBuilder line = new StringBuilder().append(now).append(' ').append(name);
+                for (MBeanAttributeInfo attribute : server.getMBeanInfo(name).getAttributes()) {
+                    Object value = server.getAttribute(name, attribute.getName());
+                    line.append(' ').append(attribute.getName()).append('=');
+                    line.append(value instanceof Double ? String.format(Locale.ROOT, "%.3f", value) : value);
+                }
+                writer.println(line);
+            }
+        } catch (Exception e) {
+            System.err.println("Erreur: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package shared;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Format binaire des trames echangees par le transport NIO entre le
+ * repartiteur et les serveurs.
+ *
+ * Chaque trame commence par sa longueur (int, sans compter ces 4 octets),
+ * suivie de l'identifiant de la requete (long) et d'un type (byte). Plusieurs
+ * requetes peuvent etre en cours sur une meme connexion: la reponse porte
+ * l'identifiant de sa requete et peut arriver dans n'importe quel ordre.
+ *
+ *   Requetes:
+ *     AUTHENTICATE : [usager][mot de passe] (chaines UTF-8 prefixees par leur longueur)
+ *     CALCULATE : [n][n codes (byte)][n parametres (int)]
+ *     CALCULATE_COUNTS : [n][n codes (byte)][n parametres (int)][n multiplicites (int)]
+ *
+ *   Reponses:
+ *     OK : [resultat (int)], 1 ou 0 pour une authentification
+ *     OVERLOADED : [operations en attente][taille suggeree][delai (long)][message]
+ *     ERROR : [message]
+ */
+public final class NioProtocol {
+
+    public static final byte AUTHENTICATE = 1;
+    public static final byte CALCULATE = 2;
+    public static final byte CALCULATE_COUNTS = 3;
+
+    public static final byte OK = 0;
+    public static final byte OVERLOADED = 1;
+    public static final byte ERROR = 2;
+
+    // Longueur de l'en-tete qui suit la longueur de la trame: identifiant et type.
+    public static final int HEADER_SIZE = Long.BYTES + 1;
+    public static final int MAX_FRAME_SIZE = 1 << 26;
+
+    private NioProtocol() {
+    }
+
+    public static ByteBuffer encodeAuthenticate(long requestId, String username, String password) {
+        byte[] user = username.getBytes(StandardCharsets.UTF_8);
+        byte[] pass = password.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = allocate(requestId, AUTHENTICATE, 2 * Integer.BYTES + user.length + pass.length);
+        frame.putInt(user.length).put(user);
+        frame.putInt(pass.length).put(pass);
+        return frame.flip();
+    }
+
+    /**
+     * Encode un lot de calcul. Les multiplicites sont facultatives (null).
+     */
+    public static ByteBuffer encodeCalculate(long requestId, byte[] opcodes, int[] parameters, int[] counts) {
+        int n = opcodes.length;
+        int size = Integer.BYTES + n + n * Integer.BYTES + (counts != null ? n * Integer.BYTES : 0);
+        ByteBuffer frame = allocate(requestId, counts != null ? CALCULATE_COUNTS : CALCULATE, size);
+        frame.putInt(n).put(opcodes);
+        frame.asIntBuffer().put(parameters);
+        frame.position(frame.position() + n * Integer.BYTES);
+        if (counts != null) {
+            frame.asIntBuffer().put(counts);
+            frame.position(frame.position() + n * Integer.BYTES);
+        }
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeResult(long requestId, int result) {
+        return allocate(requestId, OK, Integer.BYTES).putInt(result).flip();
+    }
+
+    public static ByteBuffer encodeOverloaded(long requestId, ServerOverloadedException e) {
+        byte[] message = toBytes(e.getMessage());
+        ByteBuffer frame = allocate(requestId, OVERLOADED, 3 * Integer.BYTES + Long.BYTES + message.length);
+        frame.putInt(e.getQueueDepth()).putInt(e.getSuggestedBatchSize()).putLong(e.getRetryAfterMillis());
+        frame.putInt(message.length).put(message);
+        return frame.flip();
+    }
+
+    public static ByteBuffer encodeError(long requestId, String message) {
+        byte[] bytes = toBytes(message);
+        ByteBuffer frame = allocate(requestId, ERROR, Integer.BYTES + bytes.length);
+        frame.putInt(bytes.length).put(bytes);
+        return frame.flip();
+    }
+
+    public static ServerOverloadedException decodeOverloaded(ByteBuffer frame) {
+        int queueDepth = frame.getInt();
+        int suggestedBatchSize = frame.getInt();
+        long retryAfterMillis = frame.getLong();
+        return new ServerOverloadedException(readString(frame), queueDepth, suggestedBatchSize, retryAfterMillis);
+    }
+
+    public static byte[] readBytes(ByteBuffer frame, int n) {
+        byte[] values = new byte[n];
+        frame.get(values);
+        return values;
+    }
+
+    public static int[] readInts(ByteBuffer frame, int n) {
+        int[] values = new int[n];
+        frame.asIntBuffer().get(values);
+        frame.position(frame.position() + n * Integer.BYTES);
+        return values;
+    }
+
+    public static String readString(ByteBuffer frame) {
+        return new String(readBytes(frame, frame.getInt()), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(String message) {
+        return (message != null ? message : "").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static ByteBuffer allocate(long requestId, byte type, int payloadSize) {
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + HEADER_SIZE + payloadSize);
+        frame.putInt(HEADER_SIZE + payloadSize).putLong(requestId).put(type);
+        return frame;
+    }
+
+}
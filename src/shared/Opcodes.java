@@ -0,0 +1,28 @@
+package shared;
+
+/**
+ * Codes des operations pour l'encodage compact des lots.
+ *
+ * Un lot encode est forme de deux tableaux paralleles: un tableau de codes
+ * d'operations (byte[]) et un tableau de parametres (int[]).
+ */
+public final class Opcodes {
+
+    public static final byte PELL = 0;
+    public static final byte PRIME = 1;
+
+    private Opcodes() {
+    }
+
+    /**
+     * Toute operation autre que "pell" est traitee comme "prime", comme le fait le serveur.
+     */
+    public static byte fromName(String name) {
+        return name.equals("pell") ? PELL : PRIME;
+    }
+
+    public static String toName(byte opcode) {
+        return (opcode == PELL) ? "pell" : "prime";
+    }
+
+}
@@ -0,0 +1,44 @@
+package shared;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Changements de la liste des serveurs depuis une version donnee.
+ *
+ * Si la version demandee est trop ancienne, reset est vrai et added contient
+ * la liste complete des serveurs actifs.
+ */
+public class ServerChanges implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final boolean reset;
+    private final List<ServerConfig> added;
+    private final List<ServerConfig> removed;
+
+    public ServerChanges(long version, boolean reset, List<ServerConfig> added, List<ServerConfig> removed) {
+        this.version = version;
+        this.reset = reset;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    public List<ServerConfig> getAdded() {
+        return added;
+    }
+
+    public List<ServerConfig> getRemoved() {
+        return removed;
+    }
+
+}
@@ -28,4 +28,38 @@ public class ServerConfig implements Serializable {
         return PORT;
     }
 
+    public String getRegistryName() {
+        return registryName(PORT);
+    }
+
+    /**
+     * Nom du serveur dans le registre RMI. Le nom depend du port pour que plusieurs
+     * instances puissent rouler sur un meme poste.
+     */
+    public static String registryName(int port) {
+        return "server-" + port;
+    }
+
+    /**
+     * Un serveur est identifie par son adresse et son port.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ServerConfig)) {
+            return false;
+        }
+        ServerConfig config = (ServerConfig) other;
+        return SERVER_HOSTNAME.equals(config.SERVER_HOSTNAME) && PORT == config.PORT;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * SERVER_HOSTNAME.hashCode() + PORT;
+    }
+
+    @Override
+    public String toString() {
+        return SERVER_HOSTNAME + ":" + PORT;
+    }
+
 }
@@ -7,4 +7,10 @@ import java.util.*;
 public interface ServerInterface extends Remote {
 	boolean authenticate(String username, String password) throws RemoteException;
 	int calculate(List<String> operations) throws ServerOverloadedException, RemoteException;
+	int calculate(byte[] opcodes, int[] parameters) throws ServerOverloadedException, RemoteException;
+	int calculate(byte[] opcodes, int[] parameters, int[] counts) throws ServerOverloadedException, RemoteException;
+
+	// Résultat de chaque bloc de blockSize opérations consécutives (le dernier peut être plus court), calculé
+	// comme un lot à part entière. Les multiplicités sont facultatives (null).
+	int[] calculateBlocks(byte[] opcodes, int[] parameters, int[] counts, int blockSize) throws ServerOverloadedException, RemoteException;
 }
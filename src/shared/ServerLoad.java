@@ -0,0 +1,89 @@
+package shared;
+
+import java.io.Serializable;
+
+/**
+ * Charge d'un serveur de calcul, publiee periodiquement au service des noms.
+ *
+ * La capacite effective est mesuree plutot que declaree: ce sont les
+ * operations terminees par seconde d'activite du serveur (temps pendant lequel
+ * au moins un lot est en cours). Elle tient donc compte de tous ses fils de
+ * calcul, que les lots soient evalues en parallele ou plusieurs a la fois.
+ * L'attente estimee est le temps qu'il faut au serveur pour terminer ses
+ * operations en cours, qu'elles viennent de ce repartiteur ou d'un autre.
+ * Le nombre de processeurs du poste est publie a titre indicatif: il n'entre
+ * pas dans la capacite, deja mesuree sur tous les fils.
+ */
+public class ServerLoad implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ServerConfig server;
+    private final int inFlightOperations;
+    private final double recentOperationsPerSecond;
+    private final int processors;
+    private final double effectiveOperationsPerSecond;
+
+    /**
+     * @param recentOperationsPerSecond operations terminees par seconde depuis le dernier rapport.
+     * @param processors nombre de processeurs du poste.
+     * @param effectiveOperationsPerSecond operations terminees par seconde d'activite (0 si aucune mesure).
+     */
+    public ServerLoad(int inFlightOperations, double recentOperationsPerSecond, int processors,
+            double effectiveOperationsPerSecond) {
+        this(null, inFlightOperations, recentOperationsPerSecond, processors, effectiveOperationsPerSecond);
+    }
+
+    private ServerLoad(ServerConfig server, int inFlightOperations, double recentOperationsPerSecond, int processors,
+            double effectiveOperationsPerSecond) {
+        this.server = server;
+        this.inFlightOperations = inFlightOperations;
+        this.recentOperationsPerSecond = recentOperationsPerSecond;
+        this.processors = processors;
+        this.effectiveOperationsPerSecond = effectiveOperationsPerSecond;
+    }
+
+    /**
+     * Meme rapport, associe au serveur qui l'a publie (le serveur ne connait pas l'adresse vue par le service).
+     */
+    public ServerLoad forServer(ServerConfig server) {
+        return new ServerLoad(server, inFlightOperations, recentOperationsPerSecond, processors, effectiveOperationsPerSecond);
+    }
+
+    public ServerConfig getServer() {
+        return server;
+    }
+
+    public int getInFlightOperations() {
+        return inFlightOperations;
+    }
+
+    public double getRecentOperationsPerSecond() {
+        return recentOperationsPerSecond;
+    }
+
+    public int getProcessors() {
+        return processors;
+    }
+
+    /**
+     * Operations par seconde que le serveur calcule quand il est actif (0 si aucune mesure).
+     */
+    public double getEffectiveOperationsPerSecond() {
+        return effectiveOperationsPerSecond;
+    }
+
+    /**
+     * Secondes necessaires pour terminer les operations en cours (0 sans mesure de capacite).
+     */
+    public double getExpectedWaitSeconds() {
+        return (effectiveOperationsPerSecond > 0) ? inFlightOperations / effectiveOperationsPerSecond : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d operations en cours, %.0f op/s recentes, %d processeurs, %.0f op/s en activite",
+                server, inFlightOperations, recentOperationsPerSecond, processors, effectiveOperationsPerSecond);
+    }
+
+}
@@ -1,6 +1,38 @@
 package shared;
 
+/**
+ * Exception envoyee lorsqu'un serveur refuse un lot pour surcharge.
+ *
+ * Le refus peut porter des indications pour le repartiteur: le nombre
+ * d'operations en cours ou en attente sur le serveur, une taille de lot
+ * suggeree et un delai avant de lui renvoyer du travail. Une valeur negative
+ * (ou nulle pour le delai) signifie que l'indication n'est pas connue.
+ */
 public class ServerOverloadedException extends Exception {
+
+    private int queueDepth = -1;
+    private int suggestedBatchSize = -1;
+    private long retryAfterMillis = 0;
+
     public ServerOverloadedException() { super(); }
     public ServerOverloadedException(String message) { super(message); }
-}
\ No newline at end of file
+
+    public ServerOverloadedException(String message, int queueDepth, int suggestedBatchSize, long retryAfterMillis) {
+        super(message);
+        this.queueDepth = queueDepth;
+        this.suggestedBatchSize = suggestedBatchSize;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public int getSuggestedBatchSize() {
+        return suggestedBatchSize;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -5,8 +5,18 @@ import java.rmi.RemoteException;
 import java.util.*;
 
 public interface ServiceInterface extends Remote {
+	// Intervalle des battements de coeur des serveurs. Un serveur muet pendant
+	// HEARTBEAT_TIMEOUT_MS est retire de la liste des serveurs actifs.
+	long HEARTBEAT_INTERVAL_MS = 1000;
+	long HEARTBEAT_TIMEOUT_MS = 3 * HEARTBEAT_INTERVAL_MS;
+
 	void signUpRepartiteur(String username, String password) throws RemoteException;
 	void signUpServer(int operationCapacity, int port) throws RemoteException;
+	// Rapport de charge périodique d'un serveur; il tient aussi lieu de battement de coeur.
+	boolean reportLoad(int port, ServerLoad load) throws RemoteException;
+	// Charge publiée des serveurs actifs, de l'attente estimée la plus courte à la plus longue.
+	List<ServerLoad> getServerLoads() throws RemoteException;
 	boolean authenticate(String username, String password) throws RemoteException;
 	List<ServerConfig> getServers() throws RemoteException;
+	ServerChanges getServerChanges(long sinceVersion) throws RemoteException;
 }